@@ -0,0 +1,659 @@
+package se.miun.dt175g.octi.client;
+
+import java.util.List;
+
+import se.miun.dt175g.octi.core.*;
+
+
+/**
+ * CompactState is a primitive representation of an Octi position for the search engine. Pods are kept in one
+ * long bitboard per color, prongs in a byte mask per square (bit i is the direction with ordinal i), and the two
+ * prongs left counters and the side to move are packed into one int. The Zobrist hash is kept up to date as moves
+ * are played.
+ * <p>
+ * The rules follow OctiState exactly, including its handling of jump chains, so a move generated here can always
+ * be matched with one of the actions returned by {@link OctiState#getLegalActions()}.
+ * <p>
+ * Moves are played in place and taken back with {@link #undo()}. Each played move pushes a frame on a preallocated
+ * undo stack holding the move, the destination of the moved pod, every captured pod with its prongs, and the hash and
+ * packed counters from before the move, so a search can run on one state without allocating.
+ */
+final class CompactState {
+	static final int RED = Zobrist.RED;
+	static final int BLACK = Zobrist.BLACK;
+	static final int NO_WINNER = -1;
+
+	private static final int SIDE_SHIFT = 16;
+	private static final int MAX_UNDO = 256;
+	private static final int ALL_JUMPS = 0;
+	private static final int CAPTURING_JUMPS = 1;
+	private static final int GOAL_JUMPS = 2;
+
+	private final long[] pods = new long[2];
+	private final byte[] prongs = new byte[Move.SQUARES];
+	private final long[] bases = new long[2]; // The squares of each color's own base.
+	private int packed; // Red prongs left (bits 0-7), black prongs left (bits 8-15) and side to move (bit 16).
+	private long hash;
+
+	private final long[] undoMoves;
+	private final long[] undoHashes;
+	private final int[] undoPacked;
+	private final int[] undoTo; // The destination of the moved pod, -1 if it captured itself.
+	private final int[] undoCaptureStart;
+	private final int[] undoCaptures; // Square, color and prong mask.
+	private int undoSize;
+	private int captureSize;
+
+	/**
+	 * Imports a state, keeping every pod, prong, counter and base square.
+	 * @param state is the state to import.
+	 */
+	CompactState(OctiState state) {
+		this(MAX_UNDO);
+		OctiBoard board = state.getBoard();
+		if (board.getWidth() != Move.WIDTH || board.getHeight() != Move.HEIGHT) {
+			throw new IllegalArgumentException("Only " + Move.WIDTH + "x" + Move.HEIGHT + " boards are supported");
+		}
+		for (String color : new String[] { "red", "black" }) {
+			for (Pod pod : board.getPodsForPlayer(color)) {
+				int square = Move.square(board.getPositionFromPod(pod));
+				pods[Zobrist.color(color)] |= 1L << square;
+				prongs[square] = (byte) Zobrist.prongMask(pod);
+			}
+		}
+		for (Point point : state.getRedBase()) {
+			bases[RED] |= 1L << Move.square(point);
+		}
+		for (Point point : state.getBlackBase()) {
+			bases[BLACK] |= 1L << Move.square(point);
+		}
+		int side = Zobrist.color(state.getCurrentPlayer().getColor());
+		packed = state.getRedProngsLeft() | state.getBlackProngsLeft() << 8 | side << SIDE_SHIFT;
+		hash = Zobrist.hash(state);
+	}
+
+	/**
+	 * Creates an empty state without pods, to be filled with {@link #copyFrom}.
+	 */
+	CompactState() {
+		this(MAX_UNDO);
+	}
+
+	/**
+	 * Creates a copy of another compact state.
+	 * @param other is the state to copy.
+	 */
+	CompactState(CompactState other) {
+		this(other, MAX_UNDO);
+	}
+
+	/**
+	 * Creates a copy of another compact state with a smaller undo stack. The full stack takes about 20 KB, a state
+	 * that only plays a few moves, like the one of a parallel search task, doesn't need it.
+	 * @param other is the state to copy.
+	 * @param maxUndo is the number of moves that can be played on the copy and taken back.
+	 */
+	CompactState(CompactState other, int maxUndo) {
+		this(maxUndo);
+		copyFrom(other);
+	}
+
+	private CompactState(int maxUndo) {
+		undoMoves = new long[maxUndo];
+		undoHashes = new long[maxUndo];
+		undoPacked = new int[maxUndo];
+		undoTo = new int[maxUndo];
+		undoCaptureStart = new int[maxUndo];
+		undoCaptures = new int[maxUndo * Move.MAX_JUMP_STEPS];
+	}
+
+	/**
+	 * Overwrites this state with another one without allocating. The undo history is not copied.
+	 * @param other is the state to copy.
+	 */
+	void copyFrom(CompactState other) {
+		undoSize = 0;
+		captureSize = 0;
+		pods[RED] = other.pods[RED];
+		pods[BLACK] = other.pods[BLACK];
+		bases[RED] = other.bases[RED];
+		bases[BLACK] = other.bases[BLACK];
+		System.arraycopy(other.prongs, 0, prongs, 0, Move.SQUARES);
+		packed = other.packed;
+		hash = other.hash;
+	}
+
+	int sideToMove() {
+		return packed >>> SIDE_SHIFT;
+	}
+
+	int prongsLeft(int color) {
+		return (packed >>> (8 * color)) & 0xFF;
+	}
+
+	long pods(int color) {
+		return pods[color];
+	}
+
+	int podCount(int color) {
+		return Long.bitCount(pods[color]);
+	}
+
+	long base(int color) {
+		return bases[color];
+	}
+
+	int prongMask(int square) {
+		return prongs[square] & 0xFF;
+	}
+
+	long occupied() {
+		return pods[RED] | pods[BLACK];
+	}
+
+	long hash() {
+		return hash;
+	}
+
+	/**
+	 * Calculates the minimum Manhattan distance from a square to the base a color is heading for.
+	 * @param color is the color of the pod.
+	 * @param square is the square of the pod.
+	 * @return the distance to the closest square of the opponent's base.
+	 */
+	int distanceToGoal(int color, int square) {
+		int minDistance = Integer.MAX_VALUE;
+		for (long goal = bases[1 - color]; goal != 0; goal &= goal - 1) {
+			int target = Long.numberOfTrailingZeros(goal);
+			int distance = Math.abs(square % Move.WIDTH - target % Move.WIDTH) + Math.abs(square / Move.WIDTH - target / Move.WIDTH);
+			minDistance = Math.min(minDistance, distance);
+		}
+		return minDistance;
+	}
+
+	/**
+	 * Returns the winner the same way OctiState.hasWinner does: a pod on the opponent's base, an opponent without
+	 * pods, or a side to move without legal moves.
+	 * @return RED, BLACK or NO_WINNER.
+	 */
+	int winner() {
+		if ((pods[BLACK] & bases[RED]) != 0) {
+			return BLACK;
+		}
+		if ((pods[RED] & bases[BLACK]) != 0) {
+			return RED;
+		}
+		if (pods[RED] == 0) {
+			return BLACK;
+		}
+		if (pods[BLACK] == 0) {
+			return RED;
+		}
+		return hasLegalMove() ? NO_WINNER : 1 - sideToMove();
+	}
+
+	/**
+	 * Checks whether the side to move has any legal move, without generating the moves.
+	 * @return true if at least one move exists.
+	 */
+	boolean hasLegalMove() {
+		int side = sideToMove();
+		boolean black = side == BLACK;
+		long occupied = occupied();
+		for (long bits = pods[side]; bits != 0; bits &= bits - 1) {
+			int from = Long.numberOfTrailingZeros(bits);
+			int mask = prongMask(from);
+			if (mask != 0xFF && prongsLeft(side) > 0) {
+				return true;
+			}
+			for (int direction = 0; direction < 8; direction++) {
+				if ((mask & 1 << direction) == 0) {
+					continue;
+				}
+				int to = Move.step(from, direction, black);
+				if (to < 0) {
+					continue;
+				}
+				if ((occupied & 1L << to) == 0) {
+					return true;
+				}
+				int landing = Move.step(to, direction, black);
+				if (landing >= 0 && (occupied & 1L << landing) == 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds every legal move of the side to move.
+	 * @param list is the list to add the moves to.
+	 */
+	void generateAll(MoveList list) {
+		generatePlacements(list);
+		generateMoves(list);
+		generateJumps(list);
+	}
+
+	/**
+	 * Adds the prong placements of the side to move.
+	 * @param list is the list to add the moves to.
+	 */
+	void generatePlacements(MoveList list) {
+		int side = sideToMove();
+		if (prongsLeft(side) == 0) {
+			return;
+		}
+		for (long bits = pods[side]; bits != 0; bits &= bits - 1) {
+			int from = Long.numberOfTrailingZeros(bits);
+			int mask = prongMask(from);
+			for (int direction = 0; direction < 8; direction++) {
+				if ((mask & 1 << direction) == 0) {
+					list.add(Move.placeProng(from, direction));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the single step moves of the side to move.
+	 * @param list is the list to add the moves to.
+	 */
+	void generateMoves(MoveList list) {
+		int side = sideToMove();
+		boolean black = side == BLACK;
+		long occupied = occupied();
+		for (long bits = pods[side]; bits != 0; bits &= bits - 1) {
+			int from = Long.numberOfTrailingZeros(bits);
+			int mask = prongMask(from);
+			for (int direction = 0; direction < 8; direction++) {
+				if ((mask & 1 << direction) == 0) {
+					continue;
+				}
+				int to = Move.step(from, direction, black);
+				if (to >= 0 && (occupied & 1L << to) == 0) {
+					list.add(Move.move(from, direction));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds every jump and jump chain of the side to move. Like OctiState, each jump over a pod comes in a
+	 * capturing and a non-capturing variant, and chains can't jump the same square twice or turn straight back.
+	 * @param list is the list to add the moves to.
+	 */
+	void generateJumps(MoveList list) {
+		generateJumps(list, ALL_JUMPS);
+	}
+
+	/**
+	 * Adds the jumps and jump chains of the side to move that capture at least one opponent pod and none of the
+	 * side's own pods. These are the moves the quiescence search extends.
+	 * @param list is the list to add the moves to.
+	 */
+	void generateCaptures(MoveList list) {
+		generateJumps(list, CAPTURING_JUMPS);
+	}
+
+	/**
+	 * Adds the non-capturing moves and jumps of the side to move that end on the opponent's base, each of them
+	 * wins the game.
+	 * @param list is the list to add the moves to.
+	 */
+	void generateBaseEntries(MoveList list) {
+		int side = sideToMove();
+		boolean black = side == BLACK;
+		long occupied = occupied();
+		for (long bits = pods[side]; bits != 0; bits &= bits - 1) {
+			int from = Long.numberOfTrailingZeros(bits);
+			int mask = prongMask(from);
+			for (int direction = 0; direction < 8; direction++) {
+				if ((mask & 1 << direction) == 0) {
+					continue;
+				}
+				int to = Move.step(from, direction, black);
+				if (to >= 0 && (occupied & 1L << to) == 0 && (bases[1 - side] & 1L << to) != 0) {
+					list.add(Move.move(from, direction));
+				}
+			}
+		}
+		generateJumps(list, GOAL_JUMPS);
+	}
+
+	/**
+	 * Adds the jumps and jump chains of the side to move that the filter accepts.
+	 * @param list is the list to add the moves to.
+	 * @param filter is ALL_JUMPS, CAPTURING_JUMPS or GOAL_JUMPS.
+	 */
+	private void generateJumps(MoveList list, int filter) {
+		int side = sideToMove();
+		boolean black = side == BLACK;
+		for (long bits = pods[side]; bits != 0; bits &= bits - 1) {
+			int from = Long.numberOfTrailingZeros(bits);
+			int mask = prongMask(from);
+			for (int direction = 0; direction < 8; direction++) {
+				if ((mask & 1 << direction) == 0) {
+					continue;
+				}
+				int jumped = jumpedSquare(from, direction, black, 0L);
+				if (jumped < 0) {
+					continue;
+				}
+				int landing = Move.step(jumped, direction, black);
+				for (int capture = 0; capture < 2; capture++) {
+					if (capture == 1 && !allowsCapture(filter, side, jumped)) {
+						continue;
+					}
+					long jump = Move.jump(from, direction, capture == 1);
+					if (accepts(filter, side, capture == 1, landing)) {
+						list.add(jump);
+					}
+					extendJump(list, jump, mask, landing, direction, 1L << jumped, side, filter, capture == 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Recursively adds the continuations of a jump chain.
+	 * @param list is the list to add the moves to.
+	 * @param jump is the chain so far.
+	 * @param mask is the prong mask of the jumping pod.
+	 * @param position is the square the chain currently ends on.
+	 * @param lastDirection is the direction of the last jump.
+	 * @param jumpedSquares is a bitboard of the squares already jumped.
+	 * @param side is the jumping side.
+	 * @param filter is ALL_JUMPS, CAPTURING_JUMPS or GOAL_JUMPS.
+	 * @param captured is whether the chain so far captures a pod.
+	 */
+	private void extendJump(MoveList list, long jump, int mask, int position, int lastDirection, long jumpedSquares,
+			int side, int filter, boolean captured) {
+		boolean black = side == BLACK;
+		for (int direction = 0; direction < 8; direction++) {
+			if ((mask & 1 << direction) == 0 || Move.opposite(direction) == lastDirection) {
+				continue;
+			}
+			int jumped = jumpedSquare(position, direction, black, jumpedSquares);
+			if (jumped < 0) {
+				continue;
+			}
+			int landing = Move.step(jumped, direction, black);
+			for (int capture = 0; capture < 2; capture++) {
+				if (capture == 1 && !allowsCapture(filter, side, jumped)) {
+					continue;
+				}
+				long extended = Move.addJumpStep(jump, direction, capture == 1);
+				if (accepts(filter, side, captured || capture == 1, landing)) {
+					list.add(extended);
+				}
+				extendJump(list, extended, mask, landing, direction, jumpedSquares | 1L << jumped, side, filter,
+						captured || capture == 1);
+			}
+		}
+	}
+
+	// Capture-only chains never capture own pods, including the jumper itself, and goal chains never capture.
+	private boolean allowsCapture(int filter, int side, int jumped) {
+		return filter == ALL_JUMPS || (filter == CAPTURING_JUMPS && (pods[1 - side] & 1L << jumped) != 0);
+	}
+
+	private boolean accepts(int filter, int side, boolean captured, int landing) {
+		return switch (filter) {
+			case CAPTURING_JUMPS -> captured;
+			case GOAL_JUMPS -> (bases[1 - side] & 1L << landing) != 0;
+			default -> true;
+		};
+	}
+
+	/**
+	 * Returns the square a jump in the given direction passes over, if the jump is possible. The jumping pod is
+	 * still on its starting square while a chain is generated, exactly like in OctiState.
+	 * @return the jumped square, or -1 if the jump isn't possible.
+	 */
+	private int jumpedSquare(int from, int direction, boolean black, long jumpedSquares) {
+		int jumped = Move.step(from, direction, black);
+		if (jumped < 0 || (jumpedSquares & 1L << jumped) != 0 || (occupied() & 1L << jumped) == 0) {
+			return -1;
+		}
+		int landing = Move.step(jumped, direction, black);
+		return landing < 0 || (occupied() & 1L << landing) != 0 ? -1 : jumped;
+	}
+
+	/**
+	 * Plays a legal move for the side to move and pushes what is needed to take it back.
+	 * @param move is the packed move.
+	 */
+	void play(long move) {
+		int side = sideToMove();
+		boolean black = side == BLACK;
+		int from = Move.from(move);
+		int mask = prongMask(from);
+
+		if (undoSize == undoMoves.length) {
+			throw new IllegalStateException("The undo stack is full");
+		}
+		undoMoves[undoSize] = move;
+		undoHashes[undoSize] = hash;
+		undoPacked[undoSize] = packed;
+		undoCaptureStart[undoSize] = captureSize;
+		undoTo[undoSize] = from;
+
+		if (Move.kind(move) == Move.PLACE_PRONG) {
+			setProngs(from, mask | 1 << Move.direction(move));
+			setProngsLeft(side, prongsLeft(side) - 1);
+		} else if (Move.kind(move) == Move.MOVE) {
+			int to = Move.step(from, Move.direction(move), black);
+			removePod(side, from);
+			addPod(side, to, mask);
+			undoTo[undoSize] = to;
+		} else {
+			int position = from;
+			boolean jumperCaptured = false;
+			for (int step = 0; step < Move.jumpSteps(move); step++) {
+				int direction = Move.stepDirection(move, step);
+				int jumped = Move.step(position, direction, black);
+				if (Move.stepCaptures(move, step)) {
+					int color = (pods[RED] & 1L << jumped) != 0 ? RED : BLACK;
+					undoCaptures[captureSize++] = jumped | color << 6 | prongMask(jumped) << 8;
+					setProngsLeft(side, prongsLeft(side) + Integer.bitCount(prongMask(jumped)));
+					removePod(color, jumped);
+					jumperCaptured |= jumped == from;
+				}
+				position = Move.step(jumped, direction, black);
+			}
+
+			// A jumper that captures itself on a looping chain is removed from the board, just like OctiState does.
+			if (!jumperCaptured) {
+				removePod(side, from);
+				addPod(side, position, mask);
+			}
+			undoTo[undoSize] = jumperCaptured ? -1 : position;
+		}
+		packed ^= 1 << SIDE_SHIFT;
+		hash ^= Zobrist.blackToMove();
+		undoSize++;
+	}
+
+	/**
+	 * Passes the turn to the other side without moving, for null move pruning. It is taken back with
+	 * {@link #undo()} like a move.
+	 */
+	void playNull() {
+		if (undoSize == undoMoves.length) {
+			throw new IllegalStateException("The undo stack is full");
+		}
+		undoMoves[undoSize] = Move.NONE;
+		undoHashes[undoSize] = hash;
+		undoPacked[undoSize] = packed;
+		undoCaptureStart[undoSize] = captureSize;
+		undoTo[undoSize] = -1;
+		packed ^= 1 << SIDE_SHIFT;
+		hash ^= Zobrist.blackToMove();
+		undoSize++;
+	}
+
+	/**
+	 * Takes back the last played move or null move.
+	 */
+	void undo() {
+		undoSize--;
+		long move = undoMoves[undoSize];
+		int from = Move.from(move);
+		int to = undoTo[undoSize];
+		packed = undoPacked[undoSize];
+		hash = undoHashes[undoSize];
+		int side = sideToMove();
+
+		if (move == Move.NONE) {
+			return;
+		}
+		if (Move.kind(move) == Move.PLACE_PRONG) {
+			prongs[from] &= (byte) ~(1 << Move.direction(move));
+			return;
+		}
+
+		// Move the pod back, then return the captured pods in reverse order of capture.
+		if (to >= 0) {
+			pods[side] ^= 1L << to | 1L << from;
+			prongs[from] = prongs[to];
+			prongs[to] = 0;
+		}
+		while (captureSize > undoCaptureStart[undoSize]) {
+			int capture = undoCaptures[--captureSize];
+			int square = capture & 63;
+			pods[(capture >>> 6) & 1] |= 1L << square;
+			prongs[square] = (byte) (capture >>> 8);
+		}
+	}
+
+	/**
+	 * Counts the pods of a color that a move captures, without playing it.
+	 * @param move is a legal move for the side to move.
+	 * @param color is the color of the captured pods to count.
+	 * @return the number of captured pods of that color.
+	 */
+	int capturedPods(long move, int color) {
+		if (Move.kind(move) != Move.JUMP) {
+			return 0;
+		}
+		boolean black = sideToMove() == BLACK;
+		int position = Move.from(move);
+		int captured = 0;
+		for (int step = 0; step < Move.jumpSteps(move); step++) {
+			int direction = Move.stepDirection(move, step);
+			int jumped = Move.step(position, direction, black);
+			if (Move.stepCaptures(move, step) && (pods[color] & 1L << jumped) != 0) {
+				captured++;
+			}
+			position = Move.step(jumped, direction, black);
+		}
+		return captured;
+	}
+
+	/**
+	 * Checks whether a packed move is legal for the side to move. Moves taken from the transposition table or the
+	 * killer slots may come from another position, so they are checked before they are played.
+	 * @param move is the packed move.
+	 * @return true if the move is one of the moves {@link #generateAll} would add.
+	 */
+	boolean isLegal(long move) {
+		int side = sideToMove();
+		boolean black = side == BLACK;
+		int from = Move.from(move);
+		if (move == Move.NONE || from >= Move.SQUARES || (pods[side] & 1L << from) == 0) {
+			return false;
+		}
+		int mask = prongMask(from);
+		if (Move.kind(move) == Move.PLACE_PRONG) {
+			return prongsLeft(side) > 0 && (mask & 1 << Move.direction(move)) == 0;
+		}
+		if ((mask & 1 << Move.direction(move)) == 0) {
+			return false;
+		}
+		if (Move.kind(move) == Move.MOVE) {
+			int to = Move.step(from, Move.direction(move), black);
+			return to >= 0 && (occupied() & 1L << to) == 0;
+		}
+
+		// Walk the chain with the same rules the generator uses.
+		int steps = Move.jumpSteps(move);
+		if (steps == 0 || Move.stepDirection(move, 0) != Move.direction(move)) {
+			return false;
+		}
+		int position = from;
+		long jumpedSquares = 0L;
+		for (int step = 0; step < steps; step++) {
+			int direction = Move.stepDirection(move, step);
+			if ((mask & 1 << direction) == 0 || (step > 0 && Move.opposite(direction) == Move.stepDirection(move, step - 1))) {
+				return false;
+			}
+			int jumped = jumpedSquare(position, direction, black, jumpedSquares);
+			if (jumped < 0) {
+				return false;
+			}
+			jumpedSquares |= 1L << jumped;
+			position = Move.step(jumped, direction, black);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the square a move leaves the moving pod on, without playing it.
+	 * @param move is a legal move for the side to move.
+	 * @return the destination square, the starting square for a prong placement.
+	 */
+	int destination(long move) {
+		boolean black = sideToMove() == BLACK;
+		int position = Move.from(move);
+		if (Move.kind(move) == Move.MOVE) {
+			return Move.step(position, Move.direction(move), black);
+		}
+		if (Move.kind(move) == Move.JUMP) {
+			for (int step = 0; step < Move.jumpSteps(move); step++) {
+				position = Move.step(position, Move.stepDirection(move, step), black);
+				position = Move.step(position, Move.stepDirection(move, step), black);
+			}
+		}
+		return position;
+	}
+
+	private void addPod(int color, int square, int mask) {
+		pods[color] |= 1L << square;
+		prongs[square] = (byte) mask;
+		hash ^= Zobrist.pod(color, square) ^ Zobrist.prongs(square, mask);
+	}
+
+	private void removePod(int color, int square) {
+		hash ^= Zobrist.pod(color, square) ^ Zobrist.prongs(square, prongMask(square));
+		pods[color] &= ~(1L << square);
+		prongs[square] = 0;
+	}
+
+	private void setProngs(int square, int mask) {
+		hash ^= Zobrist.prongs(square, prongMask(square)) ^ Zobrist.prongs(square, mask);
+		prongs[square] = (byte) mask;
+	}
+
+	private void setProngsLeft(int color, int left) {
+		hash ^= Zobrist.prongsLeft(color, prongsLeft(color)) ^ Zobrist.prongsLeft(color, left);
+		packed = (packed & ~(0xFF << (8 * color))) | left << (8 * color);
+	}
+
+	/**
+	 * Finds the OctiAction that a packed move stands for.
+	 * @param move is a move generated for this state.
+	 * @param state is the OctiState this compact state was imported from.
+	 * @return the matching action from {@link OctiState#getLegalActions()}.
+	 */
+	static OctiAction toAction(long move, OctiState state) {
+		List<OctiAction> actions = state.getLegalActions();
+		for (OctiAction action : actions) {
+			if (Move.of(action, state) == move) {
+				return action;
+			}
+		}
+		throw new IllegalArgumentException("No legal action matches " + Move.toString(move));
+	}
+}
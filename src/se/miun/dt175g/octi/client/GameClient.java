@@ -105,15 +105,28 @@ public class GameClient {
 					logger.log(Level.INFO, "Received null state. Exiting loop.");
 					break;
 				}
+				long received = System.nanoTime();
 				OctiState state = OctiState.createStateFromJson(stateAsJson);
 				OctiAction action = studentAgent.getNextMove(state);
 				String actionJson = OctiJsonAdapter.octiActionToJson(action);
 				this.sendJsonAction(actionJson);
+				if (studentAgent instanceof TimedAgent timedAgent) {
+					timedAgent.turnCompleted(System.nanoTime() - received);
+				}
+
+				// Keep searching while the opponent thinks.
+				if (studentAgent instanceof PonderingAgent ponderingAgent) {
+					ponderingAgent.startPondering(state.performAction(action));
+				}
 			} catch (Exception e) {
 				logger.log(Level.SEVERE, "An exception occurred during play", e);
 				break;
 			}
 		}
+		if (studentAgent instanceof PonderingAgent ponderingAgent) {
+			ponderingAgent.stopPondering();
+			logger.log(Level.INFO, ponderingAgent.getPonderReport());
+		}
 		this.stopConnection();
 	}
 
@@ -1,14 +1,43 @@
 package se.miun.dt175g.octi.client;
 
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import se.miun.dt175g.octi.core.Agent;
 import se.miun.dt175g.octi.core.communicator.PlayerSetup;
 import se.miun.dt175g.octi.core.communicator.PlayerSetupParser;
 
 
+/**
+ * Starts the client. The agent is the StudentAgent, or the MctsAgent when the system property octi.agent is "mcts".
+ * The StudentAgent doesn't ponder unless the system property octi.ponder names a {@link SearchOptions.Ponder} mode,
+ * "predicted" or "all".
+ */
 public class Main {
+	private static final Logger logger = Logger.getLogger(Main.class.getName());
+
 	public static void main(String[] args) {
 		PlayerSetup setup = new PlayerSetupParser().parse(args);
-		GameClient gc = new GameClient(setup, new StudentAgent());
+		Agent agent = "mcts".equals(System.getProperty("octi.agent"))
+				? new MctsAgent()
+				: new StudentAgent(new SearchOptions().ponder(ponder()));
+		GameClient gc = new GameClient(setup, agent);
 		gc.play();
 		
 	}
+
+	/**
+	 * Reads the ponder mode from the system property octi.ponder.
+	 * @return the named mode, or OFF if the property isn't set or names no mode.
+	 */
+	private static SearchOptions.Ponder ponder() {
+		String name = System.getProperty("octi.ponder", "off");
+		try {
+			return SearchOptions.Ponder.valueOf(name.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			logger.log(Level.WARNING, "Unknown ponder mode " + name + ", playing without pondering");
+			return SearchOptions.Ponder.OFF;
+		}
+	}
 }
@@ -0,0 +1,233 @@
+package se.miun.dt175g.octi.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import se.miun.dt175g.octi.core.*;
+
+
+/**
+ * MctsAgent is an implementation of the Octi Agent interface that uses Monte Carlo tree search instead of the
+ * minimax search of {@link StudentAgent}. It plays random games from the current position until its time is up and
+ * chooses the move whose subtree was visited most, see {@link MctsSearch}.
+ * <p>
+ * The tree is kept in the preallocated columns of an {@link MctsTree} and the random games are played on a
+ * CompactState, so once the tree has grown to its working size the agent doesn't allocate during a search. The tree
+ * is rebuilt from the root for every move.
+ * <p>
+ * With more than one thread the calling thread runs the main search, the helper searches run on other threads and
+ * are stopped when the main search is done. With tree parallelization the searches grow the same tree. With root
+ * parallelization each search grows a tree of its own, and the threads don't touch each other's data until the
+ * time is up: then the visits and rewards of each root move are summed over the trees, and the move with the most
+ * visits is played.
+ */
+public class MctsAgent extends Agent implements TimedAgent {
+	private static final Logger logger = Logger.getLogger(MctsAgent.class.getName());
+	private static final int NODES_PER_POSITION = 4; // Tree nodes per node table slot, each position has many moves.
+	private final MctsTree[] trees; // One tree shared by all searches, or one per search with root parallelization.
+	private final MctsNodeTable[] nodeTables; // The positions of each tree, or null without transpositions.
+	private final MctsSearch[] searches;
+	private final MctsStatistics statistics = new MctsStatistics();
+	private final List<Future<?>> helperResults = new ArrayList<>();
+	private final AtomicBoolean stop = new AtomicBoolean();
+	private final TimeManager timeManager = new TimeManager();
+	private ExecutorService helperThreads;
+
+	/**
+	 * Creates the agent with the default search options.
+	 */
+	public MctsAgent() {
+		this(new MctsOptions());
+	}
+
+	/**
+	 * Creates the agent, its trees and its searches.
+	 * @param options is the search settings.
+	 */
+	public MctsAgent(MctsOptions options) {
+		searches = new MctsSearch[options.getThreads()];
+		trees = new MctsTree[options.getParallelism() == MctsOptions.Parallelism.ROOT ? searches.length : 1];
+		nodeTables = new MctsNodeTable[trees.length];
+		for (int i = 0; i < trees.length; i++) {
+			trees[i] = new MctsTree(options.getMaxNodes());
+			if (options.isTranspositions()) {
+				nodeTables[i] = new MctsNodeTable(options.getMaxNodes() / NODES_PER_POSITION);
+			}
+		}
+		long seed = System.nanoTime();
+		for (int i = 0; i < searches.length; i++) {
+			searches[i] = new MctsSearch(options, trees[i % trees.length], nodeTables[i % trees.length], seed + i);
+		}
+	}
+
+	/**
+	 * Method for deciding which action the Agent should make next.
+	 * @param octiState is the current game state.
+	 * @return the next action.
+	 */
+	@Override
+	public OctiAction getNextMove(OctiState octiState) {
+		long startNanos = System.nanoTime();
+		timeManager.start(startNanos, timeLimit);
+		CompactState root = new CompactState(octiState);
+		for (int i = 0; i < trees.length; i++) {
+			trees[i].clear();
+			if (nodeTables[i] != null) {
+				nodeTables[i].clear();
+			}
+		}
+		stop.set(false);
+
+		// Start the helpers, then search on this thread. The helpers are stopped when the main search is done.
+		for (int i = 1; i < searches.length; i++) {
+			MctsSearch helper = searches[i];
+			helperResults.add(helperThreads().submit(() -> helper.search(new CompactState(root), timeManager, stop)));
+		}
+		searches[0].search(root, timeManager, stop);
+		stop.set(true);
+		waitForHelpers();
+
+		statistics.clear();
+		for (MctsSearch search : searches) {
+			statistics.add(search.getStatistics());
+		}
+		for (MctsTree tree : trees) {
+			statistics.nodes += tree.size();
+			statistics.provenResult |= tree.proof(MctsTree.ROOT) != MctsTree.UNPROVEN;
+		}
+		long bestMove = trees.length == 1 ? bestMove(trees[0]) : mergedBestMove();
+		statistics.elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+
+		OctiAction action = bestMove == Move.NONE ? octiState.getLegalActions().get(0)
+				: CompactState.toAction(bestMove, octiState);
+		timeManager.finish(System.nanoTime());
+		return action;
+	}
+
+	/**
+	 * Returns the move to play from a tree, see {@link MctsTree#bestChild}.
+	 * @param tree is the searched tree.
+	 * @return the move, or Move.NONE if the root has no children.
+	 */
+	private static long bestMove(MctsTree tree) {
+		int best = tree.bestChild(MctsTree.ROOT);
+		return best == MctsTree.NOT_EXPANDED ? Move.NONE : tree.move(best);
+	}
+
+	/**
+	 * Sums the visits and rewards of every root move over the trees of a root parallel search. Every tree expands
+	 * the root with the same moves, but they are matched by move so that the order doesn't matter. A move that one
+	 * of the trees proved won is played at once, and a move that one of them proved lost only if all moves are.
+	 * @return the move with the most visits, the one with the most rewards among equals, or Move.NONE if no tree has
+	 * expanded its root.
+	 */
+	private long mergedBestMove() {
+		long bestMove = Move.NONE;
+		boolean bestLost = true;
+		long bestVisits = -1;
+		long bestRewards = -1;
+		for (int i = 0; i < trees.length; i++) {
+			int first = trees[i].firstChild(MctsTree.ROOT);
+			for (int child = first; first >= 0 && child < first + trees[i].childCount(MctsTree.ROOT); child++) {
+				long move = trees[i].move(child);
+				if (isMerged(move, i)) {
+					continue;
+				}
+				long visits = 0;
+				long rewards = 0;
+				boolean lost = false;
+				for (int j = i; j < trees.length; j++) {
+					int other = trees[j].findChild(MctsTree.ROOT, move);
+					if (other != MctsTree.NOT_EXPANDED) {
+						if (trees[j].proof(other) == MctsTree.WIN) {
+							return move;
+						}
+						lost |= trees[j].proof(other) == MctsTree.LOSS;
+						visits += trees[j].visits(other);
+						rewards += trees[j].rewards(other);
+					}
+				}
+				if (lost != bestLost ? !lost : visits > bestVisits || visits == bestVisits && rewards > bestRewards) {
+					bestMove = move;
+					bestLost = lost;
+					bestVisits = visits;
+					bestRewards = rewards;
+				}
+			}
+		}
+		return bestMove;
+	}
+
+	/**
+	 * Checks whether a root move was already summed, because one of the trees before the given one has it.
+	 * @param move is the move.
+	 * @param tree is the index of the tree the move was found in.
+	 * @return true if an earlier tree has the move.
+	 */
+	private boolean isMerged(long move, int tree) {
+		for (int i = 0; i < tree; i++) {
+			if (trees[i].findChild(MctsTree.ROOT, move) != MctsTree.NOT_EXPANDED) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Feeds the time the client needed for the whole turn back to the time manager.
+	 * @param turnNanos is the time from receiving the state to having sent the action.
+	 */
+	@Override
+	public void turnCompleted(long turnNanos) {
+		if (timeManager.recordTurn(turnNanos)) {
+			logger.log(Level.WARNING, "The turn took " + turnNanos / 1000000 + " ms, the time limit is " + timeLimit + " ms");
+		}
+	}
+
+	/**
+	 * Returns the counters of the latest search, summed over all threads.
+	 * @return the statistics, overwritten by the next search.
+	 */
+	MctsStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Waits for the helper searches to return, so that none of them still uses a tree when it is read or cleared.
+	 */
+	private void waitForHelpers() {
+		for (Future<?> result : helperResults) {
+			try {
+				result.get();
+			} catch (ExecutionException e) {
+				logger.log(Level.SEVERE, "A helper search failed", e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		helperResults.clear();
+	}
+
+	/**
+	 * Creates the helper threads on first use. They are daemon threads so that they don't keep the client running
+	 * after the game.
+	 * @return the executor running the helper searches.
+	 */
+	private ExecutorService helperThreads() {
+		if (helperThreads == null) {
+			helperThreads = Executors.newFixedThreadPool(searches.length - 1, runnable -> {
+				Thread thread = new Thread(runnable, "mcts-helper");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return helperThreads;
+	}
+}
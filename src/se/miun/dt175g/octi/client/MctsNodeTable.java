@@ -0,0 +1,72 @@
+package se.miun.dt175g.octi.client;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+
+/**
+ * MctsNodeTable maps the Zobrist hash of a position to the first node of an {@link MctsTree} that was expanded in
+ * it. When a search expands a node whose position is already in the table, the node shares the children of the
+ * earlier node instead of getting its own, which turns the tree into a graph where each position's moves and their
+ * statistics exist once, see {@link MctsSearch}.
+ * <p>
+ * The table uses open addressing with linear probing over parallel primitive arrays and is shared by the searches
+ * of a tree without locks. A slot is claimed by a compare-and-set of its key from 0, then the node is published by a
+ * release write of the value. A reader that finds the key before the value is published treats the position as
+ * missing. A position whose probe sequence is full isn't stored, so the search just expands it as a tree node.
+ */
+final class MctsNodeTable {
+	private static final int MAX_PROBES = 16;
+	private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+	private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(int[].class);
+
+	private final long[] keys; // The hash, 0 for an empty slot.
+	private final int[] values; // The node plus one, 0 until it is published.
+	private final int mask;
+
+	/**
+	 * Creates an empty table.
+	 * @param size is the number of slots, rounded down to a power of two.
+	 */
+	MctsNodeTable(int size) {
+		int slots = Integer.highestOneBit(Math.max(2, size));
+		keys = new long[slots];
+		values = new int[slots];
+		mask = slots - 1;
+	}
+
+	/**
+	 * Removes every position. Must not be called while a searcher uses the table.
+	 */
+	void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(values, 0);
+	}
+
+	/**
+	 * Finds the node of a position, or stores the given node if the position isn't in the table yet.
+	 * @param hash is the Zobrist hash of the position.
+	 * @param node is the node to store.
+	 * @return the stored node, which is the given node if it was stored by this call, or MctsTree.NOT_EXPANDED if
+	 * the position's node isn't published yet or there is no room for it.
+	 */
+	int putIfAbsent(long hash, int node) {
+		long key = hash != 0 ? hash : 1;
+		int slot = (int) key & mask;
+		for (int probe = 0; probe < MAX_PROBES; probe++, slot = slot + 1 & mask) {
+			long stored = (long) KEYS.getAcquire(keys, slot);
+			if (stored == 0) {
+				if (KEYS.compareAndSet(keys, slot, 0L, key)) {
+					VALUES.setRelease(values, slot, node + 1);
+					return node;
+				}
+				stored = (long) KEYS.getAcquire(keys, slot);
+			}
+			if (stored == key) {
+				return (int) VALUES.getAcquire(values, slot) - 1;
+			}
+		}
+		return MctsTree.NOT_EXPANDED;
+	}
+}
@@ -0,0 +1,217 @@
+package se.miun.dt175g.octi.client;
+
+
+/**
+ * MctsOptions holds the settings of an MctsAgent search. The setters return the options so that they can be
+ * chained, e.g. {@code new MctsOptions().exploration(0.7).rolloutLimit(80)}.
+ */
+public final class MctsOptions {
+
+	/**
+	 * How the search is spread over the threads when there is more than one.
+	 */
+	public enum Parallelism {
+		/** Tree parallelization, the threads grow one shared tree and keep apart with virtual losses. */
+		TREE,
+		/** Root parallelization, every thread grows a tree of its own and the root moves' statistics are summed
+		 * when the time is up. */
+		ROOT
+	}
+
+	private double exploration = 1.0;
+	private int rolloutLimit = 100;
+	private int maxNodes = 1 << 21;
+	private int threads = 1;
+	private int virtualLoss = 3;
+	private Parallelism parallelism = Parallelism.TREE;
+	private boolean solver = true;
+	private boolean transpositions = true;
+	private boolean progressiveWidening = true;
+	private double wideningConstant = 1;
+	private double wideningExponent = 0.5;
+
+	/**
+	 * Sets the exploration constant of the UCT formula. Larger values spread the playouts more evenly over the
+	 * moves, smaller values concentrate them on the moves that scored best so far.
+	 * @param exploration is the constant, at least 0.
+	 * @return the options.
+	 */
+	public MctsOptions exploration(double exploration) {
+		if (!(exploration >= 0)) {
+			throw new IllegalArgumentException("The exploration constant can't be negative");
+		}
+		this.exploration = exploration;
+		return this;
+	}
+
+	/**
+	 * Sets the longest random playout. A playout that reaches it without a winner is decided by the pods' goal
+	 * distances, see {@link MctsSearch}.
+	 * @param rolloutLimit is the number of plies, at least 1.
+	 * @return the options.
+	 */
+	public MctsOptions rolloutLimit(int rolloutLimit) {
+		if (rolloutLimit < 1 || rolloutLimit > MctsSearch.MAX_PLIES / 2) {
+			throw new IllegalArgumentException("The rollout limit must be between 1 and " + MctsSearch.MAX_PLIES / 2);
+		}
+		this.rolloutLimit = rolloutLimit;
+		return this;
+	}
+
+	/**
+	 * Sets the size of the tree. When it is full, the search goes on with playouts from the leaves it has.
+	 * @param maxNodes is the number of nodes, at least 1024.
+	 * @return the options.
+	 */
+	public MctsOptions maxNodes(int maxNodes) {
+		if (maxNodes < 1024) {
+			throw new IllegalArgumentException("The tree must have room for at least 1024 nodes");
+		}
+		this.maxNodes = maxNodes;
+		return this;
+	}
+
+	/**
+	 * Sets the number of threads that grow the tree together.
+	 * @param threads is the number of threads, at least 1.
+	 * @return the options.
+	 */
+	public MctsOptions threads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of threads must be at least 1");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Sets the virtual loss, the number of lost visits a playout adds to each node on its path until its result is
+	 * known. Larger values push the threads further apart in the tree. Only used by tree parallelization with more
+	 * than one thread.
+	 * @param virtualLoss is the number of visits, at least 0.
+	 * @return the options.
+	 */
+	public MctsOptions virtualLoss(int virtualLoss) {
+		if (virtualLoss < 0) {
+			throw new IllegalArgumentException("The virtual loss can't be negative");
+		}
+		this.virtualLoss = virtualLoss;
+		return this;
+	}
+
+	/**
+	 * Sets how the search is spread over the threads, this only matters with more than one thread.
+	 * @param parallelism is the parallel search scheme.
+	 * @return the options.
+	 */
+	public MctsOptions parallelism(Parallelism parallelism) {
+		if (parallelism == null) {
+			throw new IllegalArgumentException("The parallelism can't be null");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Turns the MCTS-Solver on or off. With the solver, nodes where the game is decided are proven won or lost, the
+	 * proofs are passed up the tree, and the search stops once the root is proven, see {@link MctsSearch}.
+	 * @param solver is whether to prove nodes.
+	 * @return the options.
+	 */
+	public MctsOptions solver(boolean solver) {
+		this.solver = solver;
+		return this;
+	}
+
+	/**
+	 * Turns the sharing of transpositions on or off. With transpositions, nodes of the same position share their
+	 * children and the children's statistics, so the tree becomes a graph, see {@link MctsSearch}.
+	 * @param transpositions is whether to share the children of equal positions.
+	 * @return the options.
+	 */
+	public MctsOptions transpositions(boolean transpositions) {
+		this.transpositions = transpositions;
+		return this;
+	}
+
+	/**
+	 * Turns progressive widening on or off. With widening, a node only lets the selection consider its best children
+	 * by a cheap prior, and admits more of them as its visits grow, see {@link MctsSearch}.
+	 * @param progressiveWidening is whether to widen progressively.
+	 * @return the options.
+	 */
+	public MctsOptions progressiveWidening(boolean progressiveWidening) {
+		this.progressiveWidening = progressiveWidening;
+		return this;
+	}
+
+	/**
+	 * Sets how fast progressive widening admits children: a node with n visits admits
+	 * {@code ceil(constant * n^exponent)} of them.
+	 * @param constant is the number of children admitted at the first visit, more than 0.
+	 * @param exponent is the growth with the visits, between 0 and 1.
+	 * @return the options.
+	 */
+	public MctsOptions widening(double constant, double exponent) {
+		if (!(constant > 0) || !(exponent >= 0 && exponent <= 1)) {
+			throw new IllegalArgumentException("The widening constant must be positive and the exponent between 0 and 1");
+		}
+		this.wideningConstant = constant;
+		this.wideningExponent = exponent;
+		return this;
+	}
+
+	public double getExploration() {
+		return exploration;
+	}
+
+	public int getRolloutLimit() {
+		return rolloutLimit;
+	}
+
+	public int getMaxNodes() {
+		return maxNodes;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public int getVirtualLoss() {
+		return virtualLoss;
+	}
+
+	public Parallelism getParallelism() {
+		return parallelism;
+	}
+
+	public boolean isSolver() {
+		return solver;
+	}
+
+	public boolean isTranspositions() {
+		return transpositions;
+	}
+
+	public boolean isProgressiveWidening() {
+		return progressiveWidening;
+	}
+
+	public double getWideningConstant() {
+		return wideningConstant;
+	}
+
+	public double getWideningExponent() {
+		return wideningExponent;
+	}
+
+	@Override
+	public String toString() {
+		return "MCTS, exploration " + exploration + ", rollout limit " + rolloutLimit + ", max nodes " + maxNodes
+				+ (solver ? "" : ", no solver")
+				+ (transpositions ? "" : ", no transpositions")
+				+ (progressiveWidening ? ", widening " + wideningConstant + " * n^" + wideningExponent : "")
+				+ (threads > 1 ? ", threads " + threads + ", " + parallelism
+						+ (parallelism == Parallelism.TREE ? ", virtual loss " + virtualLoss : "") : "");
+	}
+}
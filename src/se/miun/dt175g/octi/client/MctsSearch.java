@@ -0,0 +1,418 @@
+package se.miun.dt175g.octi.client;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * MctsSearch runs Monte Carlo tree search with UCT on a {@link MctsTree}. Each playout:
+ * <ol>
+ * <li>walks down the tree from the root, taking the child with the best UCT value, until it reaches a leaf,</li>
+ * <li>expands the leaf if it has been visited before, and steps into one of its new children,</li>
+ * <li>plays random moves from there on a CompactState until the game is decided or the rollout limit is reached,</li>
+ * <li>adds the result to every node on the path.</li>
+ * </ol>
+ * A rollout that reaches the limit is decided by the goal distances: the side whose closest pod is nearer the
+ * opponent's base wins, and equal distances are a draw. A side that can enter the opponent's base wins the rollout
+ * without playing the move, which keeps random rollouts from walking past wins.
+ * <p>
+ * The search plays and takes back nothing: every playout copies the root into the working state and plays forward,
+ * so the undo stack of the state only has to hold one playout.
+ * <p>
+ * Several searches can share one tree, each on its own thread. A search adds a virtual loss to every node it passes
+ * on the way down and takes it back with the result, so the other searches see the nodes of running playouts as
+ * worse and spread over other branches. A leaf is expanded by the search that claims it first, see {@link MctsTree}.
+ * With root parallelization every search has a tree of its own and no virtual loss.
+ * <p>
+ * With the solver option the search also proves nodes, as in MCTS-Solver. A node whose move ends the game is proven
+ * won or lost for the player who made the move. A node is proven lost for its mover as soon as one of its children
+ * is proven won, the opponent has a winning reply, and proven won once every child is proven lost. Proven lost
+ * children are left out of the selection, a playout that reaches a proven node takes its result without a rollout,
+ * and the search returns as soon as the root is proven.
+ * <p>
+ * With the transpositions option a {@link MctsNodeTable} turns the tree into a graph: a leaf whose position was
+ * already expanded elsewhere in the tree gets the same children as the earlier node, instead of children of its own.
+ * The children's visits and rewards are then the statistics of the position's moves over every path that reaches
+ * the position, and a playout updates the nodes on its own path as usual. Since the children's visits no longer add
+ * up to the visits of any one parent node, the exploration term uses the sum of the children's visits as the
+ * parent's count. A proof that was made through another parent reaches this one when a playout passes through it.
+ * Positions can repeat, so the graph has cycles, and a descent that would enter a node already on its path stops and
+ * rolls out from where it is.
+ * <p>
+ * With progressive widening the selection doesn't consider all children of a node from the start. The children are
+ * ordered by a cheap prior when the node is expanded, and a node with n visits admits only its first
+ * {@code ceil(constant * n^exponent)} children that aren't proven lost. The prior ranks:
+ * <ul>
+ * <li>moves that win at once first,</li>
+ * <li>then by the opponent's pods captured, less the own pods lost,</li>
+ * <li>then prong placements that give the pod a jump over a neighbour,</li>
+ * <li>then by how much closer to the opponent's base the move brings the pod, or for a prong placement the step
+ * the new prong allows.</li>
+ * </ul>
+ * That keeps the playouts on plausible moves in positions where most of the moves are prong placements, instead of
+ * spending one visit on each of them first.
+ */
+final class MctsSearch {
+	static final int MAX_PLIES = 240; // Tree path plus rollout, the state's undo stack holds 256 moves.
+	private static final int WIN = 2;
+	private static final int DRAW = 1;
+	private static final int POLL_INTERVAL = 16; // Playouts between two looks at the clock.
+
+	// Prior weights for progressive widening.
+	private static final int WIN_PRIOR = 1 << 20;
+	private static final int CAPTURE_WEIGHT = 1000;
+	private static final int JUMP_WEIGHT = 100;
+	private static final int APPROACH_WEIGHT = 10;
+
+	private final MctsOptions options;
+	private final MctsTree tree;
+	private final MctsNodeTable nodeTable;
+	private final int virtualLoss;
+	private final CompactState state = new CompactState();
+	private final MoveList moves = new MoveList(256);
+	private final int[] path = new int[MAX_PLIES + 1];
+	private final int[] movers = new int[MAX_PLIES + 1]; // The side that made the move of each node on the path.
+	private final SplittableRandom random;
+	private final MctsStatistics statistics = new MctsStatistics();
+
+	/**
+	 * Creates a search.
+	 * @param options is the search settings.
+	 * @param tree is the tree, shared with the other searches of the agent with tree parallelization.
+	 * @param nodeTable is the positions of the tree's expanded nodes, or null to search a plain tree.
+	 * @param seed is the seed of the rollouts, different for every search that shares the tree.
+	 */
+	MctsSearch(MctsOptions options, MctsTree tree, MctsNodeTable nodeTable, long seed) {
+		this.options = options;
+		this.tree = tree;
+		this.nodeTable = nodeTable;
+		virtualLoss = options.getThreads() > 1 && options.getParallelism() == MctsOptions.Parallelism.TREE
+				? options.getVirtualLoss() : 0;
+		random = new SplittableRandom(seed);
+	}
+
+	/**
+	 * Runs playouts from a position until the time is up, the search is stopped or the root is proven. The tree must
+	 * have been cleared for the position.
+	 * @param root is the position, it is not changed.
+	 * @param timeManager is the deadline of the search.
+	 * @param stop is set when a search that shares the tree is done, so that the others return too.
+	 */
+	void search(CompactState root, TimeManager timeManager, AtomicBoolean stop) {
+		statistics.clear();
+		do {
+			for (int i = 0; i < POLL_INTERVAL && tree.proof(MctsTree.ROOT) == MctsTree.UNPROVEN; i++) {
+				playout(root);
+			}
+		} while (!timeManager.isTimeUp() && !stop.get() && tree.proof(MctsTree.ROOT) == MctsTree.UNPROVEN);
+	}
+
+	/**
+	 * Runs one playout and adds its result to the path.
+	 * @param root is the position at the root of the tree.
+	 */
+	void playout(CompactState root) {
+		state.copyFrom(root);
+		int node = MctsTree.ROOT;
+		int length = 0;
+		enter(node, length++, 1 - state.sideToMove());
+
+		// Selection.
+		while (tree.isExpanded(node) && tree.childCount(node) > 0 && tree.proof(node) == MctsTree.UNPROVEN
+				&& length < MAX_PLIES) {
+			int child = select(node);
+			if (nodeTable != null && isOnPath(child, length)) {
+				break; // The pods moved back to a position on the path, roll out from here instead of going around.
+			}
+			node = child;
+			enter(node, length++, state.sideToMove());
+			state.play(tree.move(node));
+		}
+
+		// Expansion, a leaf gets its children on its second visit so that the tree doesn't fill up with nodes that
+		// are only ever visited once.
+		int winner = state.winner();
+		if (winner == CompactState.NO_WINNER && tree.proof(node) == MctsTree.UNPROVEN
+				&& (tree.visits(node) > virtualLoss || node == MctsTree.ROOT) && length < MAX_PLIES && expand(node)) {
+			int admitted = Math.min(tree.childCount(node), admitted(Math.max(1, tree.visits(node))));
+			node = tree.firstChild(node) + random.nextInt(admitted);
+			enter(node, length++, state.sideToMove());
+			state.play(tree.move(node));
+			winner = state.winner();
+		}
+
+		// Simulation, unless the node is proven or ends the game, and backpropagation.
+		int mover = movers[length - 1];
+		byte proof = tree.proof(node);
+		if (proof != MctsTree.UNPROVEN) {
+			winner = proof == MctsTree.WIN ? mover : 1 - mover;
+			if (options.isSolver()) {
+				passProof(length - 1);
+			}
+		} else if (winner != CompactState.NO_WINNER) {
+			if (options.isSolver()) {
+				prove(length - 1, winner == mover ? MctsTree.WIN : MctsTree.LOSS);
+			}
+		} else {
+			winner = rollout(length);
+		}
+		for (int i = 0; i < length; i++) {
+			tree.addPlayout(path[i], winner == CompactState.NO_WINNER ? DRAW : winner == movers[i] ? WIN : 0, virtualLoss);
+		}
+		statistics.playouts++;
+		statistics.depth = Math.max(statistics.depth, length);
+	}
+
+	/**
+	 * Proves a node on the path and passes the proof up the path as far as it decides the ancestors.
+	 * @param index is the position of the node on the path.
+	 * @param proof is WIN or LOSS, for the player who made the node's move.
+	 */
+	private void prove(int index, byte proof) {
+		tree.setProof(path[index], proof);
+		statistics.proofs++;
+		passProof(index);
+	}
+
+	/**
+	 * Passes the proof of a node on the path up the path as far as it decides the ancestors.
+	 * @param index is the position of the proven node on the path.
+	 */
+	private void passProof(int index) {
+		for (int i = index; i > 0 && tree.proof(path[i - 1]) == MctsTree.UNPROVEN; i--) {
+			int parent = path[i - 1];
+			if (tree.proof(path[i]) == MctsTree.WIN) {
+				tree.setProof(parent, MctsTree.LOSS);
+			} else if (isLost(parent)) {
+				tree.setProof(parent, MctsTree.WIN);
+			} else {
+				return;
+			}
+			statistics.proofs++;
+		}
+	}
+
+	/**
+	 * Checks whether every child of a node is proven lost for the player who made its move.
+	 * @param node is an expanded node.
+	 * @return true if the player to move in the node has only losing moves.
+	 */
+	private boolean isLost(int node) {
+		int first = tree.firstChild(node);
+		for (int child = first; child < first + tree.childCount(node); child++) {
+			if (tree.proof(child) != MctsTree.LOSS) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether a node is already on the path, which only happens in a graph when a line returns to an earlier
+	 * position.
+	 * @param node is the node.
+	 * @param length is the length of the path.
+	 * @return true if the node is on the path.
+	 */
+	private boolean isOnPath(int node, int length) {
+		for (int i = 0; i < length; i++) {
+			if (path[i] == node) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds a node to the path of the playout and gives it the virtual loss.
+	 * @param node is the node.
+	 * @param index is the position of the node on the path.
+	 * @param mover is the side that made the node's move.
+	 */
+	private void enter(int node, int index, int mover) {
+		path[index] = node;
+		movers[index] = mover;
+		if (virtualLoss > 0) {
+			tree.addVirtualLoss(node, virtualLoss);
+		}
+	}
+
+	/**
+	 * Calculates how many children progressive widening admits.
+	 * @param visits is the visits of the parent.
+	 * @return the number of children that aren't proven lost to consider, Integer.MAX_VALUE without widening.
+	 */
+	private int admitted(int visits) {
+		if (!options.isProgressiveWidening()) {
+			return Integer.MAX_VALUE;
+		}
+		return (int) Math.ceil(options.getWideningConstant() * Math.pow(visits, options.getWideningExponent()));
+	}
+
+	/**
+	 * Picks the child with the best UCT value among the admitted ones. A proven win comes first, then the unvisited
+	 * children in prior order, and proven losses are left out.
+	 * @param node is an expanded node with children.
+	 * @return the child.
+	 */
+	private int select(int node) {
+		int first = tree.firstChild(node);
+		int end = first + tree.childCount(node);
+		int parentVisits = Math.max(1, nodeTable != null ? childVisits(first, end) : tree.visits(node));
+		double logVisits = Math.log(parentVisits);
+		double exploration = options.getExploration();
+		int admitted = admitted(parentVisits);
+		int best = first;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int child = first; child < end; child++) {
+			byte proof = tree.proof(child);
+			if (proof == MctsTree.WIN) {
+				return child;
+			} else if (proof == MctsTree.LOSS) {
+				continue;
+			} else if (admitted-- == 0) {
+				break;
+			}
+			int visits = tree.visits(child);
+			if (visits == 0) {
+				return child;
+			}
+			double value = tree.rewards(child) / (2.0 * visits) + exploration * Math.sqrt(logVisits / visits);
+			if (value > bestValue) {
+				bestValue = value;
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Sums the visits of a node's children, the visits of the node's position over all its parents in a graph.
+	 * @param first is the first child.
+	 * @param end is the index after the last child.
+	 * @return the sum.
+	 */
+	private int childVisits(int first, int end) {
+		int visits = 0;
+		for (int child = first; child < end; child++) {
+			visits += tree.visits(child);
+		}
+		return visits;
+	}
+
+	/**
+	 * Adds the children of a leaf, one per legal move, if no other search is expanding it. With transpositions a
+	 * leaf whose position is already expanded shares the children of that node instead.
+	 * @param node is the leaf, its position is the working state.
+	 * @return true if this search added the children, false if another search claimed the leaf or the tree is full.
+	 */
+	private boolean expand(int node) {
+		if (!tree.claimExpansion(node)) {
+			return false;
+		}
+		if (nodeTable != null) {
+			int owner = nodeTable.putIfAbsent(state.hash(), node);
+			int first = owner != node && owner >= 0 ? tree.firstChild(owner) : MctsTree.NOT_EXPANDED;
+			if (first >= 0) {
+				tree.setChildren(node, first, tree.childCount(owner));
+				statistics.transpositions++;
+				return tree.childCount(owner) > 0;
+			}
+		}
+		moves.clear();
+		state.generateAll(moves);
+		if (options.isProgressiveWidening()) {
+			orderByPrior();
+		}
+		int first = tree.allocate(moves.size(), Move.NONE);
+		if (first == MctsTree.NOT_EXPANDED) {
+			tree.releaseExpansion(node);
+			return false;
+		}
+		for (int i = 0; i < moves.size(); i++) {
+			tree.setMove(first + i, moves.get(i));
+		}
+		tree.setChildren(node, first, moves.size());
+		return moves.size() > 0;
+	}
+
+	/**
+	 * Sorts the generated moves by their prior, best first, see the class comment.
+	 */
+	private void orderByPrior() {
+		int side = state.sideToMove();
+		boolean black = side == CompactState.BLACK;
+		int ownPods = state.podCount(side);
+		int opponentPods = state.podCount(1 - side);
+		for (int i = 0; i < moves.size(); i++) {
+			long move = moves.get(i);
+			int from = Move.from(move);
+			int score;
+			if (Move.kind(move) == Move.PLACE_PRONG) {
+				int target = Move.step(from, Move.direction(move), black);
+				int landing = target >= 0 ? Move.step(target, Move.direction(move), black) : -1;
+				score = target < 0 ? -APPROACH_WEIGHT
+						: (state.distanceToGoal(side, from) - state.distanceToGoal(side, target)) * APPROACH_WEIGHT;
+				if (landing >= 0 && (state.occupied() & 1L << target) != 0 && (state.occupied() & 1L << landing) == 0) {
+					score += JUMP_WEIGHT;
+				}
+			} else {
+				score = (state.distanceToGoal(side, from) - state.distanceToGoal(side, state.destination(move)))
+						* APPROACH_WEIGHT;
+			}
+			state.play(move);
+			if (state.winner() == side) {
+				score = WIN_PRIOR;
+			} else {
+				score += ((opponentPods - state.podCount(1 - side)) - (ownPods - state.podCount(side))) * CAPTURE_WEIGHT;
+			}
+			state.undo();
+			moves.setScore(i, score);
+		}
+		for (int i = 0; i < moves.size(); i++) {
+			moves.pickBest(i);
+		}
+	}
+
+	/**
+	 * Plays random moves until the game is decided or the rollout limit is reached.
+	 * @param length is the number of moves already played from the root.
+	 * @return the winner, or CompactState.NO_WINNER for a draw.
+	 */
+	private int rollout(int length) {
+		int limit = Math.min(options.getRolloutLimit(), MAX_PLIES - length);
+		for (int ply = 0; ply < limit; ply++) {
+			moves.clear();
+			state.generateBaseEntries(moves);
+			if (moves.size() > 0) {
+				return state.sideToMove();
+			}
+			state.generateAll(moves);
+			state.play(moves.get(random.nextInt(moves.size())));
+			int winner = state.winner();
+			if (winner != CompactState.NO_WINNER) {
+				return winner;
+			}
+		}
+		int red = closestDistance(CompactState.RED);
+		int black = closestDistance(CompactState.BLACK);
+		return red < black ? CompactState.RED : black < red ? CompactState.BLACK : CompactState.NO_WINNER;
+	}
+
+	/**
+	 * Finds how far a side's most advanced pod is from the opponent's base.
+	 * @param color is the side.
+	 * @return the smallest goal distance of the side's pods.
+	 */
+	private int closestDistance(int color) {
+		int closest = Integer.MAX_VALUE;
+		for (long pods = state.pods(color); pods != 0; pods &= pods - 1) {
+			closest = Math.min(closest, state.distanceToGoal(color, Long.numberOfTrailingZeros(pods)));
+		}
+		return closest;
+	}
+
+	MctsStatistics getStatistics() {
+		return statistics;
+	}
+}
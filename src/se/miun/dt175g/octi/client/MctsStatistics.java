@@ -0,0 +1,51 @@
+package se.miun.dt175g.octi.client;
+
+
+/**
+ * Counters collected by MctsAgent during its latest search, the Monte Carlo counterpart of
+ * {@link SearchStatistics}. The counters are reset at the start of every search.
+ */
+final class MctsStatistics {
+	long playouts; // Playouts from the root, each one a tree descent and a random rollout, summed over all threads.
+	int nodes; // Nodes in the tree when the search stopped.
+	int depth; // The longest path from the root to a leaf that a playout took.
+	long proofs; // Nodes proven won or lost by the solver, including the ones passed up the tree.
+	long transpositions; // Expansions that shared the children of a node with the same position.
+	boolean provenResult; // The search stopped early because the solver proved the root.
+	long elapsedMillis;
+
+	void clear() {
+		playouts = 0;
+		nodes = 0;
+		depth = 0;
+		proofs = 0;
+		transpositions = 0;
+		provenResult = false;
+		elapsedMillis = 0;
+	}
+
+	/**
+	 * Adds the counters of a search that shared the tree.
+	 * @param other is the statistics of one of the searches.
+	 */
+	void add(MctsStatistics other) {
+		playouts += other.playouts;
+		depth = Math.max(depth, other.depth);
+		proofs += other.proofs;
+		transpositions += other.transpositions;
+	}
+
+	/**
+	 * Calculates the search speed.
+	 * @return the playouts per second by all threads together.
+	 */
+	long playoutsPerSecond() {
+		return playouts * 1000 / Math.max(1, elapsedMillis);
+	}
+
+	@Override
+	public String toString() {
+		return "playouts " + playouts + " (" + playoutsPerSecond() + "/s), nodes " + nodes + ", tree depth " + depth
+				+ (transpositions > 0 ? ", transpositions " + transpositions : "") + ", proofs " + proofs + (provenResult ? " (root proven)" : "") + ", " + elapsedMillis + " ms";
+	}
+}
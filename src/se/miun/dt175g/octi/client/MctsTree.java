@@ -0,0 +1,278 @@
+package se.miun.dt175g.octi.client;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * MctsTree stores a Monte Carlo search tree in columns of primitive arrays instead of node objects. A node is an
+ * index, and each column holds one field of every node:
+ * <ul>
+ * <li>visits, the number of playouts through the node,</li>
+ * <li>rewards, the sum of the playout results for the player who made the node's move, in half points: 2 for a win,
+ * 1 for a draw and 0 for a loss,</li>
+ * <li>first child, the index of the node's first child, NOT_EXPANDED or EXPANDING, the children of a node are
+ * allocated next to each other,</li>
+ * <li>child count, the number of children once the node is expanded,</li>
+ * <li>move, the packed move that leads from the parent to the node,</li>
+ * <li>proof, whether the node is proven won or lost for the player who made its move, see {@link MctsSearch}.</li>
+ * </ul>
+ * The columns are allocated in chunks of CHUNK_SIZE nodes. A new chunk is only added when the tree grows into it,
+ * and {@link #clear()} keeps the chunks, so a tree that is reused from move to move stops allocating once it has
+ * reached its working size.
+ * <p>
+ * Several searchers can grow the tree at the same time without locks:
+ * <ul>
+ * <li>Visits and rewards are changed with atomic adds through VarHandles.</li>
+ * <li>A searcher claims the expansion of a node by a compare-and-set of its first child from NOT_EXPANDED to
+ * EXPANDING. The other searchers treat the node as a leaf until the children are published.</li>
+ * <li>Nodes are allocated by moving the size forward with a compare-and-set. Only adding a chunk takes a lock, which
+ * happens once per CHUNK_SIZE nodes.</li>
+ * <li>The children are published by a release write of the first child, after their moves are written, and read
+ * with an acquire, so a searcher that sees the children also sees their moves.</li>
+ * </ul>
+ */
+final class MctsTree {
+	static final int ROOT = 0;
+	static final int NOT_EXPANDED = -1;
+	static final int EXPANDING = -2; // Claimed by a searcher that is generating the children.
+	static final byte UNPROVEN = 0;
+	static final byte WIN = 1; // The player who made the node's move wins with best play.
+	static final byte LOSS = 2; // The player who made the node's move loses with best play.
+	private static final int CHUNK_BITS = 14;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+	private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+	private static final VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+	private final int capacity;
+	private final int[][] visits;
+	private final long[][] rewards;
+	private final int[][] firstChild;
+	private final int[][] childCount;
+	private final long[][] moves;
+	private final byte[][] proofs;
+	private final AtomicInteger size = new AtomicInteger();
+	private volatile int chunks; // Written after the chunk arrays, so a reader that sees it sees them.
+
+	/**
+	 * Creates an empty tree.
+	 * @param capacity is the largest number of nodes the tree will hold.
+	 */
+	MctsTree(int capacity) {
+		this.capacity = capacity;
+		int length = (capacity + CHUNK_MASK) >>> CHUNK_BITS;
+		visits = new int[length][];
+		rewards = new long[length][];
+		firstChild = new int[length][];
+		childCount = new int[length][];
+		moves = new long[length][];
+		proofs = new byte[length][];
+	}
+
+	/**
+	 * Removes every node and adds an unexpanded root. Must not be called while a searcher uses the tree.
+	 */
+	void clear() {
+		size.set(0);
+		allocate(1, Move.NONE);
+	}
+
+	/**
+	 * Adds unexpanded nodes with no visits, next to each other.
+	 * @param count is the number of nodes.
+	 * @param move is the move of the nodes, set each node's own move with {@link #setMove}.
+	 * @return the index of the first node, or NOT_EXPANDED if the tree has no room for them.
+	 */
+	int allocate(int count, long move) {
+		int first;
+		do {
+			first = size.get();
+			if (first + count > capacity) {
+				return NOT_EXPANDED;
+			}
+		} while (!size.compareAndSet(first, first + count));
+		int end = first + count;
+		if (chunks << CHUNK_BITS < end) {
+			addChunks(end);
+		}
+		for (int node = first; node < end; node++) {
+			int chunk = node >>> CHUNK_BITS;
+			int offset = node & CHUNK_MASK;
+			visits[chunk][offset] = 0;
+			rewards[chunk][offset] = 0;
+			firstChild[chunk][offset] = NOT_EXPANDED;
+			childCount[chunk][offset] = 0;
+			moves[chunk][offset] = move;
+			proofs[chunk][offset] = UNPROVEN;
+		}
+		return first;
+	}
+
+	/**
+	 * Adds the chunks that are missing below a node index.
+	 * @param end is the number of nodes the chunks must hold.
+	 */
+	private synchronized void addChunks(int end) {
+		int added = chunks;
+		for (; added << CHUNK_BITS < end; added++) {
+			if (visits[added] == null) {
+				visits[added] = new int[CHUNK_SIZE];
+				rewards[added] = new long[CHUNK_SIZE];
+				firstChild[added] = new int[CHUNK_SIZE];
+				childCount[added] = new int[CHUNK_SIZE];
+				moves[added] = new long[CHUNK_SIZE];
+				proofs[added] = new byte[CHUNK_SIZE];
+			}
+		}
+		chunks = added;
+	}
+
+	/**
+	 * Claims the expansion of a node for the calling searcher.
+	 * @param node is the node.
+	 * @return true if the node was not expanded and no other searcher had claimed it.
+	 */
+	boolean claimExpansion(int node) {
+		return INTS.compareAndSet(firstChild[node >>> CHUNK_BITS], node & CHUNK_MASK, NOT_EXPANDED, EXPANDING);
+	}
+
+	/**
+	 * Gives up a claimed expansion, when the tree has no room for the children.
+	 * @param node is the node.
+	 */
+	void releaseExpansion(int node) {
+		INTS.setRelease(firstChild[node >>> CHUNK_BITS], node & CHUNK_MASK, NOT_EXPANDED);
+	}
+
+	/**
+	 * Links a claimed node to its children and publishes them to the other searchers.
+	 * @param node is the node.
+	 * @param first is the index of the first child.
+	 * @param count is the number of children, 0 for a node without moves.
+	 */
+	void setChildren(int node, int first, int count) {
+		childCount[node >>> CHUNK_BITS][node & CHUNK_MASK] = count;
+		INTS.setRelease(firstChild[node >>> CHUNK_BITS], node & CHUNK_MASK, first);
+	}
+
+	/**
+	 * Marks a node as proven. A proof never changes, so searches that prove the same node agree.
+	 * @param node is the node.
+	 * @param proof is WIN or LOSS, for the player who made the node's move.
+	 */
+	void setProof(int node, byte proof) {
+		BYTES.setRelease(proofs[node >>> CHUNK_BITS], node & CHUNK_MASK, proof);
+	}
+
+	void setMove(int node, long move) {
+		moves[node >>> CHUNK_BITS][node & CHUNK_MASK] = move;
+	}
+
+	/**
+	 * Adds a virtual loss to a node: visits that haven't scored yet, so that the other searchers see the node as
+	 * worse while a playout through it is running.
+	 * @param node is the node.
+	 * @param virtualLoss is the number of visits.
+	 */
+	void addVirtualLoss(int node, int virtualLoss) {
+		INTS.getAndAdd(visits[node >>> CHUNK_BITS], node & CHUNK_MASK, virtualLoss);
+	}
+
+	/**
+	 * Records a playout through a node.
+	 * @param node is the node.
+	 * @param reward is the result for the player who made the node's move, in half points.
+	 * @param virtualLoss is the virtual loss added to the node for the playout, it is taken back.
+	 */
+	void addPlayout(int node, int reward, int virtualLoss) {
+		INTS.getAndAdd(visits[node >>> CHUNK_BITS], node & CHUNK_MASK, 1 - virtualLoss);
+		if (reward != 0) {
+			LONGS.getAndAdd(rewards[node >>> CHUNK_BITS], node & CHUNK_MASK, (long) reward);
+		}
+	}
+
+	int size() {
+		return size.get();
+	}
+
+	boolean isExpanded(int node) {
+		return firstChild(node) >= 0;
+	}
+
+	int visits(int node) {
+		return (int) INTS.getOpaque(visits[node >>> CHUNK_BITS], node & CHUNK_MASK);
+	}
+
+	long rewards(int node) {
+		return (long) LONGS.getOpaque(rewards[node >>> CHUNK_BITS], node & CHUNK_MASK);
+	}
+
+	/**
+	 * Returns the first child of a node, with acquire semantics so that the children's moves are visible.
+	 * @param node is the node.
+	 * @return the index of the first child, NOT_EXPANDED or EXPANDING.
+	 */
+	int firstChild(int node) {
+		return (int) INTS.getAcquire(firstChild[node >>> CHUNK_BITS], node & CHUNK_MASK);
+	}
+
+	int childCount(int node) {
+		return childCount[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	long move(int node) {
+		return moves[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	byte proof(int node) {
+		return (byte) BYTES.getAcquire(proofs[node >>> CHUNK_BITS], node & CHUNK_MASK);
+	}
+
+	/**
+	 * Finds the child of an expanded node that a move leads to.
+	 * @param node is the node.
+	 * @param move is the move.
+	 * @return the child, or NOT_EXPANDED if the node isn't expanded or has no such child.
+	 */
+	int findChild(int node, long move) {
+		int first = firstChild(node);
+		for (int child = first; first >= 0 && child < first + childCount(node); child++) {
+			if (move(child) == move) {
+				return child;
+			}
+		}
+		return NOT_EXPANDED;
+	}
+
+	/**
+	 * Finds the child of an expanded node to play: a proven win if there is one, otherwise the most visited child
+	 * that isn't a proven loss, the most robust choice when the playouts stop. Only if every child is a proven loss
+	 * is the most visited of them returned.
+	 * @param node is the node.
+	 * @return the child, or NOT_EXPANDED if the node isn't expanded or has no children.
+	 */
+	int bestChild(int node) {
+		int first = firstChild(node);
+		if (first < 0) {
+			return NOT_EXPANDED;
+		}
+		int best = NOT_EXPANDED;
+		for (int child = first; child < first + childCount(node); child++) {
+			if (proof(child) == WIN) {
+				return child;
+			}
+			if (best == NOT_EXPANDED || isBetter(child, best)) {
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	private boolean isBetter(int child, int best) {
+		boolean lost = proof(child) == LOSS;
+		return lost != (proof(best) == LOSS) ? !lost : visits(child) > visits(best);
+	}
+}
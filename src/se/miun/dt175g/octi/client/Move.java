@@ -0,0 +1,222 @@
+package se.miun.dt175g.octi.client;
+
+import java.util.List;
+
+import se.miun.dt175g.octi.core.*;
+
+
+/**
+ * Move packs an Octi action into a single long so that it can be stored in the search tables without
+ * keeping references to OctiAction objects.
+ * <p>
+ * Layout (low bit first): kind (2 bits), from square (6 bits), direction (3 bits), number of jump steps (4 bits),
+ * then one 4 bit group per jump step holding the step direction (3 bits) and a capture flag (1 bit).
+ * A square is {@code y * WIDTH + x}, and a direction is the ordinal of {@link Direction}.
+ */
+final class Move {
+	static final long NONE = 0L;
+
+	static final int PLACE_PRONG = 1;
+	static final int MOVE = 2;
+	static final int JUMP = 3;
+
+	static final int WIDTH = 6;
+	static final int HEIGHT = 7;
+	static final int SQUARES = WIDTH * HEIGHT;
+	static final int MAX_JUMP_STEPS = 12;
+
+	private static final int[] OPPOSITE = { 1, 0, 3, 2, 7, 6, 5, 4 };
+	private static final int FROM_SHIFT = 2;
+	private static final int DIRECTION_SHIFT = 8;
+	private static final int STEP_COUNT_SHIFT = 11;
+	private static final int STEPS_SHIFT = 16;
+
+	private Move() {
+	}
+
+	/**
+	 * Creates a prong placement move.
+	 * @param from is the square of the pod that receives the prong.
+	 * @param direction is the direction index of the prong.
+	 * @return the packed move.
+	 */
+	static long placeProng(int from, int direction) {
+		return PLACE_PRONG | ((long) from << FROM_SHIFT) | ((long) direction << DIRECTION_SHIFT);
+	}
+
+	/**
+	 * Creates a single step move.
+	 * @param from is the square of the moving pod.
+	 * @param direction is the direction index of the step.
+	 * @return the packed move.
+	 */
+	static long move(int from, int direction) {
+		return MOVE | ((long) from << FROM_SHIFT) | ((long) direction << DIRECTION_SHIFT);
+	}
+
+	/**
+	 * Creates a jump move with a single step, further steps are added with {@link #addJumpStep}.
+	 * @param from is the square of the jumping pod.
+	 * @param direction is the direction index of the first jump.
+	 * @param capture is whether the first jumped pod is captured.
+	 * @return the packed move.
+	 */
+	static long jump(int from, int direction, boolean capture) {
+		long jump = JUMP | ((long) from << FROM_SHIFT) | ((long) direction << DIRECTION_SHIFT);
+		return addJumpStep(jump, direction, capture);
+	}
+
+	/**
+	 * Appends a jump step to a jump move.
+	 * @param jump is the jump move to extend.
+	 * @param direction is the direction index of the new step.
+	 * @param capture is whether the jumped pod is captured.
+	 * @return the extended move.
+	 */
+	static long addJumpStep(long jump, int direction, boolean capture) {
+		int steps = jumpSteps(jump);
+		if (steps == MAX_JUMP_STEPS) {
+			throw new IllegalStateException("Jump chains longer than " + MAX_JUMP_STEPS + " steps can't be packed");
+		}
+		long step = direction | (capture ? 8L : 0L);
+		jump &= ~(0xFL << STEP_COUNT_SHIFT);
+		jump |= (long) (steps + 1) << STEP_COUNT_SHIFT;
+		return jump | (step << (STEPS_SHIFT + 4 * steps));
+	}
+
+	static int kind(long move) {
+		return (int) (move & 3);
+	}
+
+	static int from(long move) {
+		return (int) (move >>> FROM_SHIFT) & 63;
+	}
+
+	static int direction(long move) {
+		return (int) (move >>> DIRECTION_SHIFT) & 7;
+	}
+
+	static int jumpSteps(long move) {
+		return (int) (move >>> STEP_COUNT_SHIFT) & 15;
+	}
+
+	static int stepDirection(long move, int step) {
+		return (int) (move >>> (STEPS_SHIFT + 4 * step)) & 7;
+	}
+
+	static boolean stepCaptures(long move, int step) {
+		return ((move >>> (STEPS_SHIFT + 4 * step)) & 8) != 0;
+	}
+
+	/**
+	 * Counts the captures made by a move.
+	 * @param move is the packed move.
+	 * @return the number of captured pods, zero for anything that isn't a capturing jump.
+	 */
+	static int captures(long move) {
+		if (kind(move) != JUMP) {
+			return 0;
+		}
+		int captures = 0;
+		for (int step = 0; step < jumpSteps(move); step++) {
+			if (stepCaptures(move, step)) {
+				captures++;
+			}
+		}
+		return captures;
+	}
+
+	/**
+	 * Returns the direction that points the opposite way, so that stepping in both gets back to the start.
+	 * @param direction is the direction index.
+	 * @return the opposite direction index.
+	 */
+	static int opposite(int direction) {
+		return OPPOSITE[direction];
+	}
+
+	static int square(int x, int y) {
+		return y * WIDTH + x;
+	}
+
+	static int square(Point point) {
+		return square(point.x(), point.y());
+	}
+
+	/**
+	 * Returns the square one step away in the given direction, as seen from the side with the given color.
+	 * @param square is the starting square.
+	 * @param direction is the direction index.
+	 * @param black is whether the moving side is black, black sees the board rotated half a turn.
+	 * @return the neighbouring square, or -1 if it is outside the board.
+	 */
+	static int step(int square, int direction, boolean black) {
+		int x = square % WIDTH + dx(direction, black);
+		int y = square / WIDTH + dy(direction, black);
+		return x < 0 || y < 0 || x >= WIDTH || y >= HEIGHT ? -1 : square(x, y);
+	}
+
+	private static int dx(int direction, boolean black) {
+		int dx = switch (direction) {
+			case 2, 4, 6 -> 1; // LEFT, FRONT_LEFT, BACK_LEFT
+			case 3, 5, 7 -> -1; // RIGHT, FRONT_RIGHT, BACK_RIGHT
+			default -> 0;
+		};
+		return black ? -dx : dx;
+	}
+
+	private static int dy(int direction, boolean black) {
+		int dy = switch (direction) {
+			case 0, 4, 5 -> 1; // FRONT, FRONT_LEFT, FRONT_RIGHT
+			case 1, 6, 7 -> -1; // BACK, BACK_LEFT, BACK_RIGHT
+			default -> 0;
+		};
+		return black ? -dy : dy;
+	}
+
+	/**
+	 * Packs an OctiAction that is legal in the given state.
+	 * @param action is the action to pack.
+	 * @param state is the state the action is played in.
+	 * @return the packed move.
+	 */
+	static long of(OctiAction action, OctiState state) {
+		int from = square(state.getBoard().getPositionFromPod(action.getPod()));
+		if (action instanceof PlaceProngAction placeProngAction) {
+			return placeProng(from, placeProngAction.getDirection().ordinal());
+		}
+		if (action instanceof MoveAction moveAction) {
+			return move(from, moveAction.getDirection().ordinal());
+		}
+		List<JumpActionElement> elements = ((JumpAction) action).getJumpActionElements();
+		long jump = jump(from, elements.get(0).getDirection().ordinal(), elements.get(0).isCapturePod());
+		for (int i = 1; i < elements.size(); i++) {
+			jump = addJumpStep(jump, elements.get(i).getDirection().ordinal(), elements.get(i).isCapturePod());
+		}
+		return jump;
+	}
+
+	/**
+	 * Formats a packed move for logging.
+	 * @param move is the packed move.
+	 * @return a short readable description.
+	 */
+	static String toString(long move) {
+		if (move == NONE) {
+			return "none";
+		}
+		Direction[] directions = Direction.values();
+		String from = "[" + from(move) % WIDTH + "," + from(move) / WIDTH + "]";
+		if (kind(move) == PLACE_PRONG) {
+			return "prong " + from + " " + directions[direction(move)];
+		}
+		if (kind(move) == MOVE) {
+			return "move " + from + " " + directions[direction(move)];
+		}
+		StringBuilder sb = new StringBuilder("jump ").append(from);
+		for (int step = 0; step < jumpSteps(move); step++) {
+			sb.append(' ').append(directions[stepDirection(move, step)]).append(stepCaptures(move, step) ? "x" : "");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,107 @@
+package se.miun.dt175g.octi.client;
+
+import java.util.Arrays;
+
+
+/**
+ * MoveHistory collects the move ordering knowledge of the search:
+ * <ul>
+ * <li>two killer moves per ply, quiet moves that caused a cutoff in a sibling node,</li>
+ * <li>a butterfly history table indexed by side, pod square, direction and move kind, raised for quiet moves that
+ * cause a cutoff and lowered for the quiet moves searched before them,</li>
+ * <li>a countermove table holding the quiet move that last refuted each opponent move.</li>
+ * </ul>
+ * A jump is filed under the direction of its first step. The history is aged instead of cleared between moves,
+ * so what was learned on the previous move still helps the ordering of the next one.
+ */
+final class MoveHistory {
+	private static final int MAX_HISTORY = 1 << 14;
+	private static final int SIZE = 2 * Move.SQUARES * 8 * 4;
+
+	private final long[][] killers;
+	private final int[] history = new int[SIZE];
+	private final long[] countermoves = new long[SIZE];
+
+	/**
+	 * Creates empty tables.
+	 * @param maxPly is the number of plies to keep killer moves for.
+	 */
+	MoveHistory(int maxPly) {
+		killers = new long[maxPly][2];
+	}
+
+	long killer(int ply, int slot) {
+		return killers[ply][slot];
+	}
+
+	/**
+	 * Returns the move that last refuted a move of the opponent.
+	 * @param side is the side to move.
+	 * @param lastMove is the opponent's move, or Move.NONE.
+	 * @return the countermove, or Move.NONE.
+	 */
+	long countermove(int side, long lastMove) {
+		return lastMove == Move.NONE ? Move.NONE : countermoves[index(1 - side, lastMove)];
+	}
+
+	int score(int side, long move) {
+		return history[index(side, move)];
+	}
+
+	/**
+	 * Rewards a quiet move that caused a cutoff and punishes the quiet moves that were searched before it without
+	 * causing one. The adjustment grows with the square of the remaining depth.
+	 * @param ply is the distance from the root.
+	 * @param side is the side that played the move.
+	 * @param move is the move that caused the cutoff.
+	 * @param lastMove is the opponent's move before it, or Move.NONE.
+	 * @param depth is the remaining depth of the node.
+	 * @param searchedQuiets is the quiet moves searched before the cutoff move.
+	 */
+	void update(int ply, int side, long move, long lastMove, int depth, MoveList searchedQuiets) {
+		if (killers[ply][0] != move) {
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = move;
+		}
+		if (lastMove != Move.NONE) {
+			countermoves[index(1 - side, lastMove)] = move;
+		}
+		int bonus = Math.min(depth * depth, MAX_HISTORY / 4);
+		adjust(index(side, move), bonus);
+		for (int i = 0; i < searchedQuiets.size(); i++) {
+			adjust(index(side, searchedQuiets.get(i)), -bonus);
+		}
+	}
+
+	/**
+	 * Prepares the tables for the next move of the game. The killers belong to plies that are now two plies
+	 * off, so they are dropped, and the history is scaled down so that new results soon outweigh the old ones.
+	 */
+	void age() {
+		for (long[] plyKillers : killers) {
+			plyKillers[0] = Move.NONE;
+			plyKillers[1] = Move.NONE;
+		}
+		for (int i = 0; i < SIZE; i++) {
+			history[i] /= 4;
+		}
+	}
+
+	/**
+	 * Empties every table.
+	 */
+	void clear() {
+		age();
+		Arrays.fill(history, 0);
+		Arrays.fill(countermoves, Move.NONE);
+	}
+
+	// Moves the entry towards the bonus, which keeps it within -MAX_HISTORY to MAX_HISTORY.
+	private void adjust(int index, int bonus) {
+		history[index] += bonus - history[index] * Math.abs(bonus) / MAX_HISTORY;
+	}
+
+	private static int index(int side, long move) {
+		return ((side * Move.SQUARES + Move.from(move)) * 8 + Move.direction(move)) * 4 + Move.kind(move);
+	}
+}
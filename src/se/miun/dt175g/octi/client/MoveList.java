@@ -0,0 +1,82 @@
+package se.miun.dt175g.octi.client;
+
+import java.util.Arrays;
+
+
+/**
+ * A growable list of packed moves with an optional ordering score per move. Lists are meant to be allocated
+ * once per search ply and reused, so clearing keeps the backing arrays.
+ */
+final class MoveList {
+	private long[] moves;
+	private int[] scores;
+	private int size;
+
+	MoveList() {
+		this(64);
+	}
+
+	MoveList(int capacity) {
+		moves = new long[capacity];
+		scores = new int[capacity];
+	}
+
+	void add(long move) {
+		if (size == moves.length) {
+			moves = Arrays.copyOf(moves, size * 2);
+			scores = Arrays.copyOf(scores, size * 2);
+		}
+		scores[size] = 0;
+		moves[size++] = move;
+	}
+
+	long get(int index) {
+		return moves[index];
+	}
+
+	int score(int index) {
+		return scores[index];
+	}
+
+	void setScore(int index, int score) {
+		scores[index] = score;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void swap(int i, int j) {
+		long move = moves[i];
+		int score = scores[i];
+		moves[i] = moves[j];
+		scores[i] = scores[j];
+		moves[j] = move;
+		scores[j] = score;
+	}
+
+	void removeLast() {
+		size--;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Swaps the highest scored move among the remaining ones into the given position. Picking one move at a time
+	 * is cheaper than a full sort when a cutoff comes early.
+	 * @param from is the first position that hasn't been picked yet.
+	 * @return the picked move.
+	 */
+	long pickBest(int from) {
+		int best = from;
+		for (int i = from + 1; i < size; i++) {
+			if (scores[i] > scores[best]) {
+				best = i;
+			}
+		}
+		swap(best, from);
+		return moves[from];
+	}
+}
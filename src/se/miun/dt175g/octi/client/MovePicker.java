@@ -0,0 +1,249 @@
+package se.miun.dt175g.octi.client;
+
+
+/**
+ * MovePicker hands out the moves of a position one at a time, in stages, so that a node that gets a cutoff early
+ * doesn't pay for generating and sorting moves it never searches. The stages are:
+ * <ol>
+ * <li>the hash move from the transposition table,</li>
+ * <li>jumps that capture more opponent pods than own pods, most net captures first,</li>
+ * <li>the killer moves of the ply and the countermove to the opponent's last move,</li>
+ * <li>the remaining moves and jumps, ordered by their history score and how much closer to the opponent's base
+ * they bring the pod,</li>
+ * <li>prong placements, ordered by their history score.</li>
+ * </ol>
+ * A stage's moves are only generated when the previous stage is used up. One picker is allocated per ply and reused.
+ * <p>
+ * Pickers of Lazy SMP helper threads add a small, fixed pseudo random amount to the quiet move scores, which
+ * reorders moves with similar scores differently in every thread.
+ */
+final class MovePicker {
+	private static final int HASH = 0;
+	private static final int CAPTURES = 1;
+	private static final int KILLERS = 2;
+	private static final int QUIETS = 3;
+	private static final int PLACEMENTS = 4;
+	private static final int DONE = 5;
+	private static final int APPROACH_WEIGHT = 1024; // History points worth one step closer to the opponent's base.
+
+	private final MoveList moves = new MoveList(256);
+	private final MoveList quiets = new MoveList(256);
+	private final int variation;
+	private CompactState state;
+	private MoveHistory history;
+	private long hashMove;
+	private long killer1;
+	private long killer2;
+	private long countermove;
+	private int stage;
+	private int index;
+	private boolean reducible; // Whether the move returned last may be searched with a late move reduction.
+
+	/**
+	 * Creates a picker.
+	 * @param variation is the move ordering noise seed of the searcher, 0 keeps the plain ordering.
+	 */
+	MovePicker(int variation) {
+		this.variation = variation;
+	}
+
+	/**
+	 * Prepares the picker for a new node. Nothing is generated until {@link #next()} needs it.
+	 * @param state is the position, it must not change while the picker is in use except for moves that are undone.
+	 * @param hashMove is the best move stored for the position, or Move.NONE.
+	 * @param history is the killer, countermove and history tables of the search.
+	 * @param ply is the distance from the root.
+	 * @param lastMove is the opponent's move that led to the position, or Move.NONE.
+	 */
+	void init(CompactState state, long hashMove, MoveHistory history, int ply, long lastMove) {
+		this.state = state;
+		this.history = history;
+		this.hashMove = hashMove;
+		killer1 = history.killer(ply, 0);
+		killer2 = history.killer(ply, 1);
+		countermove = history.countermove(state.sideToMove(), lastMove);
+		if (countermove == killer1 || countermove == killer2) {
+			countermove = Move.NONE;
+		}
+		stage = HASH;
+		index = 0;
+	}
+
+	/**
+	 * Returns the next move to search.
+	 * @return the next move, or Move.NONE when every move has been returned.
+	 */
+	long next() {
+		reducible = false;
+		while (true) {
+			switch (stage) {
+				case HASH -> {
+					stage = CAPTURES;
+					if (hashMove != Move.NONE && state.isLegal(hashMove)) {
+						return hashMove;
+					}
+					hashMove = Move.NONE;
+				}
+				case CAPTURES -> {
+					if (index == 0) {
+						generateCaptures();
+					}
+					while (index < moves.size()) {
+						long move = moves.pickBest(index++);
+						if (move != hashMove) {
+							return move;
+						}
+					}
+					stage = KILLERS;
+					index = 0;
+				}
+				case KILLERS -> {
+					long killer = index == 0 ? killer1 : index == 1 ? killer2 : countermove;
+					if (++index == 3) {
+						stage = QUIETS;
+						index = 0;
+					}
+					if (isKillerCandidate(killer) && state.isLegal(killer)) {
+						return killer;
+					}
+				}
+				case QUIETS -> {
+					if (index == 0) {
+						generateQuiets();
+					}
+					while (index < quiets.size()) {
+						long move = quiets.pickBest(index++);
+						if (!isSearched(move)) {
+							reducible = Move.captures(move) == 0 && !isApproach(move);
+							return move;
+						}
+					}
+					stage = PLACEMENTS;
+					index = 0;
+				}
+				case PLACEMENTS -> {
+					if (index == 0) {
+						generatePlacements();
+					}
+					while (index < moves.size()) {
+						long move = moves.pickBest(index++);
+						if (!isSearched(move)) {
+							reducible = true;
+							return move;
+						}
+					}
+					stage = DONE;
+				}
+				default -> {
+					return Move.NONE;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tells whether the move returned last is a quiet move that may be searched with a reduced depth when it comes
+	 * late. Moves of the hash, capture and killer stages are not, and neither are jumps that capture own pods or
+	 * moves that bring a pod closer to the opponent's base.
+	 * @return true if the move may be reduced.
+	 */
+	boolean isReducible() {
+		return reducible;
+	}
+
+	/**
+	 * Checks whether a move brings its pod closer to the opponent's base.
+	 * @param move is a move or jump.
+	 * @return true if the pod's distance to the base gets shorter.
+	 */
+	private boolean isApproach(long move) {
+		int side = state.sideToMove();
+		return state.distanceToGoal(side, state.destination(move)) < state.distanceToGoal(side, Move.from(move));
+	}
+
+	/**
+	 * Killer moves and countermoves are quiet moves. A capturing one could also come up in the capture stage, so they
+	 * are left out.
+	 * @param killer is the killer move.
+	 * @return true if the killer should be tried in the killer stage.
+	 */
+	private boolean isKillerCandidate(long killer) {
+		return killer != Move.NONE && killer != hashMove && Move.captures(killer) == 0;
+	}
+
+	/**
+	 * Checks whether a move of the later stages was already returned by the hash or killer stage.
+	 * @param move is the move.
+	 * @return true if the move has been searched.
+	 */
+	private boolean isSearched(long move) {
+		return move == hashMove || (move == killer1 && isKillerCandidate(killer1)) || (move == killer2 && isKillerCandidate(killer2))
+				|| (move == countermove && isKillerCandidate(countermove));
+	}
+
+	/**
+	 * Generates the jumps, keeping the winning captures for the capture stage and setting the rest aside for the
+	 * quiet stage.
+	 */
+	private void generateCaptures() {
+		int side = state.sideToMove();
+		moves.clear();
+		quiets.clear();
+		state.generateJumps(quiets);
+		for (int i = 0; i < quiets.size(); i++) {
+			long move = quiets.get(i);
+			if (Move.captures(move) == 0) {
+				continue;
+			}
+			int gain = state.capturedPods(move, 1 - side) - state.capturedPods(move, side);
+			if (gain > 0) {
+				moves.add(move);
+				moves.setScore(moves.size() - 1, gain);
+
+				// Remove it from the quiet moves by moving the last one into its place.
+				quiets.swap(i, quiets.size() - 1);
+				quiets.removeLast();
+				i--;
+			}
+		}
+	}
+
+	/**
+	 * Adds the single step moves to the jumps set aside by the capture stage and scores them by their history and
+	 * by how much closer to the opponent's base they bring the pod.
+	 */
+	private void generateQuiets() {
+		int side = state.sideToMove();
+		state.generateMoves(quiets);
+		for (int i = 0; i < quiets.size(); i++) {
+			long move = quiets.get(i);
+			int from = Move.from(move);
+			int approach = state.distanceToGoal(side, from) - state.distanceToGoal(side, state.destination(move));
+
+			// A jump that only captures own pods is kept, but tried last among the quiet moves.
+			int penalty = Move.captures(move) > 0 ? 100 : 0;
+			quiets.setScore(i, history.score(side, move) + (approach - penalty) * APPROACH_WEIGHT + noise(move));
+		}
+	}
+
+	/**
+	 * Returns the ordering noise of a move, between 0 and 1023, always 0 for the main searcher.
+	 * @param move is the move.
+	 * @return the noise.
+	 */
+	private int noise(long move) {
+		return variation == 0 ? 0 : (int) ((move * 0x9E3779B97F4A7C15L + variation * 0xBF58476D1CE4E5B9L) >>> 54);
+	}
+
+	/**
+	 * Generates the prong placements and scores them by their history.
+	 */
+	private void generatePlacements() {
+		int side = state.sideToMove();
+		moves.clear();
+		state.generatePlacements(moves);
+		for (int i = 0; i < moves.size(); i++) {
+			moves.setScore(i, history.score(side, moves.get(i)) + noise(moves.get(i)));
+		}
+	}
+}
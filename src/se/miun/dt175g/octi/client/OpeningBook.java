@@ -0,0 +1,124 @@
+package se.miun.dt175g.octi.client;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+
+/**
+ * OpeningBook holds moves for the first positions of the game, as found by the deep searches of
+ * {@link OpeningBookBuilder}. The file is memory mapped and looked up with a binary search, so a book move costs
+ * microseconds instead of a whole search.
+ * <p>
+ * The file starts with a header of HEADER_BYTES bytes, followed by ENTRY_BYTES bytes per entry: the Zobrist hash of
+ * the position, the packed move and its weight, the number of self-play games that chose the move. The entries are
+ * sorted by hash, so the moves of a position are next to each other.
+ */
+final class OpeningBook {
+	static final long MAGIC = 0x4F637469426F6BL; // "OctiBok"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 16;
+	static final int ENTRY_BYTES = 24;
+
+	// Header fields and entry fields, as byte offsets.
+	static final int MAGIC_OFFSET = 0;
+	static final int VERSION_OFFSET = 8;
+	static final int COUNT_OFFSET = 12;
+	static final int HASH_OFFSET = 0;
+	static final int MOVE_OFFSET = 8;
+	static final int WEIGHT_OFFSET = 16;
+
+	private final MappedByteBuffer data;
+	private final int count;
+
+	private OpeningBook(MappedByteBuffer data) {
+		this.data = data;
+		count = data.getInt(COUNT_OFFSET);
+	}
+
+	/**
+	 * Maps a book file.
+	 * @param path is the file written by OpeningBookBuilder.
+	 * @return the book.
+	 * @throws IOException if the file can't be read or isn't a book.
+	 */
+	static OpeningBook open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_BYTES) {
+				throw new IOException(path + " is not an opening book file");
+			}
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (data.getLong(MAGIC_OFFSET) != MAGIC || data.getInt(VERSION_OFFSET) != VERSION
+					|| channel.size() != HEADER_BYTES + (long) data.getInt(COUNT_OFFSET) * ENTRY_BYTES) {
+				throw new IOException(path + " is not an opening book file");
+			}
+			return new OpeningBook(data);
+		}
+	}
+
+	/**
+	 * Picks a book move for a position, each move with a probability in proportion to its weight. Moves that aren't
+	 * legal in the position, which can only happen when another position has the same hash, are left out.
+	 * @param state is the position.
+	 * @param random is the source of the choice.
+	 * @return the move, or Move.NONE if the position isn't in the book.
+	 */
+	long probe(CompactState state, Random random) {
+		long hash = state.hash();
+		int first = firstEntry(hash);
+		long totalWeight = 0;
+		int end = first;
+		for (; end < count && hash(end) == hash; end++) {
+			if (state.isLegal(move(end))) {
+				totalWeight += weight(end);
+			}
+		}
+		if (totalWeight == 0) {
+			return Move.NONE;
+		}
+		long pick = (long) (random.nextDouble() * totalWeight);
+		for (int i = first; i < end; i++) {
+			if (state.isLegal(move(i))) {
+				pick -= weight(i);
+				if (pick < 0) {
+					return move(i);
+				}
+			}
+		}
+		return Move.NONE;
+	}
+
+	/**
+	 * Finds the first entry with a hash that is not smaller than the given one.
+	 * @param hash is the hash.
+	 * @return the index of the entry, or the number of entries if there is none.
+	 */
+	private int firstEntry(long hash) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (hash(middle) < hash) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private long hash(int entry) {
+		return data.getLong(HEADER_BYTES + entry * ENTRY_BYTES + HASH_OFFSET);
+	}
+
+	private long move(int entry) {
+		return data.getLong(HEADER_BYTES + entry * ENTRY_BYTES + MOVE_OFFSET);
+	}
+
+	private int weight(int entry) {
+		return data.getInt(HEADER_BYTES + entry * ENTRY_BYTES + WEIGHT_OFFSET);
+	}
+}
@@ -0,0 +1,167 @@
+package se.miun.dt175g.octi.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import se.miun.dt175g.octi.core.*;
+
+
+/**
+ * The OpeningBookBuilder class writes an {@link OpeningBook} from self-play games. Each game is played from the
+ * start position for a number of plies, and every move is chosen by a deep search with a fixed time per move. The
+ * games run in parallel, one game per thread at a time.
+ * <p>
+ * The games differ because each one searches with its own move ordering variation, the same way Lazy SMP helpers
+ * do: among moves with equal scores, different games end up with different best moves. The weight of a book move is
+ * the number of games that chose it.
+ * <p>
+ * Usage: {@code OpeningBookBuilder <file> [games] [plies] [millis per move] [threads]}, by default 64 games of 8
+ * plies with 2000 ms per move and one thread per available processor.
+ */
+public class OpeningBookBuilder {
+	private static final int TABLE_SIZE_MB = 16;
+
+	private final int plies;
+	private final long millisPerMove;
+	private final ThreadLocal<TranspositionTable[]> tables; // One table per color, the scores are for the color.
+
+	/**
+	 * Creates a builder.
+	 * @param plies is the length of the games.
+	 * @param millisPerMove is the search time of each move.
+	 */
+	OpeningBookBuilder(int plies, long millisPerMove) {
+		this.plies = plies;
+		this.millisPerMove = millisPerMove;
+		tables = ThreadLocal.withInitial(() -> new TranspositionTable[] {
+				new TranspositionTable(TABLE_SIZE_MB), new TranspositionTable(TABLE_SIZE_MB) });
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		if (args.length < 1) {
+			System.err.println("Usage: OpeningBookBuilder <file> [games] [plies] [millis per move] [threads]");
+			return;
+		}
+		int games = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		int plies = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+		long millisPerMove = args.length > 3 ? Long.parseLong(args[3]) : 2000;
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+		OpeningBookBuilder builder = new OpeningBookBuilder(plies, millisPerMove);
+		Map<Long, Map<Long, Integer>> weights = builder.playGames(games, threads);
+		int entries = write(Path.of(args[0]), weights);
+		System.out.println("Wrote " + entries + " moves for " + weights.size() + " positions");
+	}
+
+	/**
+	 * Plays the self-play games and counts how often each move was chosen in each position.
+	 * @param games is the number of games.
+	 * @param threads is the number of games played at the same time.
+	 * @return the weights, by position hash and move.
+	 * @throws InterruptedException if the builder is interrupted.
+	 * @throws ExecutionException if a game fails.
+	 */
+	Map<Long, Map<Long, Integer>> playGames(int games, int threads) throws InterruptedException, ExecutionException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Map<Long, Map<Long, Integer>> weights = new HashMap<>();
+		try {
+			List<Callable<long[]>> tasks = new ArrayList<>();
+			for (int game = 0; game < games; game++) {
+				int variation = game;
+				tasks.add(() -> playGame(variation));
+			}
+			int finished = 0;
+			for (Future<long[]> result : executor.invokeAll(tasks)) {
+				long[] moves = result.get();
+				for (int i = 0; i < moves.length; i += 2) {
+					weights.computeIfAbsent(moves[i], hash -> new HashMap<>()).merge(moves[i + 1], 1, Integer::sum);
+				}
+				System.out.println("Game " + ++finished + " of " + games + " done");
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return weights;
+	}
+
+	/**
+	 * Plays one game from the start position.
+	 * @param variation is the move ordering variation of the game's searches, 0 for the plain ordering. The searches
+	 * run as main searchers whatever the variation, so every game keeps the soft time limit and the start depth.
+	 * @return the position hashes and the moves chosen in them, in pairs.
+	 */
+	private long[] playGame(int variation) {
+		TranspositionTable[] colorTables = tables.get();
+		Searcher[] searchers = {
+				new Searcher(new SearchOptions(), colorTables[CompactState.RED], null, 0, variation),
+				new Searcher(new SearchOptions(), colorTables[CompactState.BLACK], null, 0, variation) };
+		TimeManager timeManager = new TimeManager();
+		CompactState state = new CompactState(OctiState.createBasicMode());
+		long[] moves = new long[2 * plies];
+		int played = 0;
+		while (played < plies && state.winner() == CompactState.NO_WINNER) {
+			int side = state.sideToMove();
+			colorTables[side].newSearch();
+			searchers[side].ageHistory();
+			long startNanos = System.nanoTime();
+			timeManager.start(startNanos, millisPerMove);
+			long move = searchers[side].search(state, side, startNanos, 1, Searcher.MAX_PLY - 1, timeManager,
+					new AtomicBoolean());
+			if (move == Move.NONE) {
+				break;
+			}
+			moves[2 * played] = state.hash();
+			moves[2 * played + 1] = move;
+			played++;
+			state.play(move);
+		}
+		return Arrays.copyOf(moves, 2 * played);
+	}
+
+	/**
+	 * Writes the book file, the entries sorted by position hash and the moves of a position by weight.
+	 * @param path is the file.
+	 * @param weights is the weights, by position hash and move.
+	 * @return the number of entries.
+	 * @throws IOException if the file can't be written.
+	 */
+	static int write(Path path, Map<Long, Map<Long, Integer>> weights) throws IOException {
+		List<long[]> entries = new ArrayList<>();
+		for (Map.Entry<Long, Map<Long, Integer>> position : weights.entrySet()) {
+			for (Map.Entry<Long, Integer> move : position.getValue().entrySet()) {
+				entries.add(new long[] { position.getKey(), move.getKey(), move.getValue() });
+			}
+		}
+		entries.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[2], a[2]));
+
+		ByteBuffer buffer = ByteBuffer.allocate(OpeningBook.HEADER_BYTES + entries.size() * OpeningBook.ENTRY_BYTES);
+		buffer.putLong(OpeningBook.MAGIC_OFFSET, OpeningBook.MAGIC);
+		buffer.putInt(OpeningBook.VERSION_OFFSET, OpeningBook.VERSION);
+		buffer.putInt(OpeningBook.COUNT_OFFSET, entries.size());
+		for (int i = 0; i < entries.size(); i++) {
+			int offset = OpeningBook.HEADER_BYTES + i * OpeningBook.ENTRY_BYTES;
+			buffer.putLong(offset + OpeningBook.HASH_OFFSET, entries.get(i)[0]);
+			buffer.putLong(offset + OpeningBook.MOVE_OFFSET, entries.get(i)[1]);
+			buffer.putInt(offset + OpeningBook.WEIGHT_OFFSET, (int) entries.get(i)[2]);
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.write(buffer);
+		}
+		return entries.size();
+	}
+}
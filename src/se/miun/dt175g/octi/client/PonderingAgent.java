@@ -0,0 +1,29 @@
+package se.miun.dt175g.octi.client;
+
+import se.miun.dt175g.octi.core.OctiState;
+
+
+/**
+ * A PonderingAgent can search on the opponent's time. The {@link GameClient} starts pondering after it has sent the
+ * agent's action and stops it when the game is over; in between, the next call to getNextMove decides what to do
+ * with the ponder search.
+ */
+public interface PonderingAgent {
+
+	/**
+	 * Starts searching on the opponent's time. Returns at once, the search runs in the background.
+	 * @param octiState is the game state after the agent's move, with the opponent to move.
+	 */
+	void startPondering(OctiState octiState);
+
+	/**
+	 * Stops a running ponder search and waits for it to return.
+	 */
+	void stopPondering();
+
+	/**
+	 * Describes how often pondering paid off.
+	 * @return a one line summary for the log.
+	 */
+	String getPonderReport();
+}
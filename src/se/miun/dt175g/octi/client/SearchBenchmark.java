@@ -0,0 +1,199 @@
+package se.miun.dt175g.octi.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import se.miun.dt175g.octi.core.*;
+
+
+/**
+ * The SearchBenchmark class compares search settings of the StudentAgent on the same positions.
+ *
+ * The positions are reached by random play from the start position with a fixed seed, so every run searches the
+ * same positions. Each position is searched to a fixed depth without a time limit and the node counts are printed,
+ * one line per position and setting.
+ *
+ * The second part searches the same positions with 1 to N threads and prints the nodes per second and the average
+ * time to reach each depth, for both Lazy SMP and Young Brothers Wait. N is the first argument, or the number of
+ * available processors.
+ *
+ * The last part searches the same positions with the MctsAgent and the StudentAgent at the same time limit, and
+ * prints the playouts per second next to the nodes per second and depth of the alpha-beta search, then the playouts
+ * per second of the MctsAgent with 1 to N threads, for both tree and root parallelization.
+ *
+ * Modify the list of settings in main to compare other options.
+ */
+public class SearchBenchmark {
+	private static final long SEED = 55;
+	private static final int POSITIONS = 12;
+	private static final int DEPTH = 8; // About as deep as the search gets in half a second, see TIME_LIMIT_MILLIS.
+	private static final long TIME_LIMIT_MILLIS = 500; // Time per position when comparing MCTS with alpha-beta.
+
+	public static void main(String[] args) {
+		List<OctiState> positions = positions(new Random(SEED), POSITIONS);
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		List<SearchOptions> settings = List.of(
+				new SearchOptions().mode(SearchOptions.Mode.ALPHA_BETA).maxDepth(DEPTH),
+				new SearchOptions().mode(SearchOptions.Mode.PVS).maxDepth(DEPTH).aspirationWidth(0),
+				new SearchOptions().mode(SearchOptions.Mode.PVS).maxDepth(DEPTH).aspirationWidth(5000),
+				new SearchOptions().mode(SearchOptions.Mode.PVS).maxDepth(DEPTH),
+				new SearchOptions().mode(SearchOptions.Mode.PVS).maxDepth(DEPTH).quiescence(false),
+				new SearchOptions().mode(SearchOptions.Mode.PVS).maxDepth(DEPTH).nullMove(false),
+				new SearchOptions().mode(SearchOptions.Mode.PVS).maxDepth(DEPTH).lateMoveReductions(false),
+				new SearchOptions().mode(SearchOptions.Mode.PVS).maxDepth(DEPTH).futilityPruning(false).razoring(false));
+
+		for (SearchOptions options : settings) {
+			long totalNodes = 0;
+			long totalTime = 0;
+			for (int i = 0; i < positions.size(); i++) {
+				StudentAgent agent = new StudentAgent(options);
+				SearchStatistics statistics = search(agent, positions.get(i));
+				totalNodes += statistics.nodes;
+				totalTime += statistics.elapsedMillis;
+				System.out.println(options + ", position " + i + ": " + statistics);
+			}
+			System.out.println(options + ", total: nodes " + totalNodes + ", " + totalTime + " ms");
+		}
+
+		// Parallel scaling, the same positions with 1 to maxThreads threads. One agent per thread count, so that
+		// the threads are reused.
+		for (SearchOptions.Parallelism parallelism : SearchOptions.Parallelism.values()) {
+			for (int threads = 1; threads <= maxThreads; threads++) {
+				compareThreads(positions, new SearchOptions().maxDepth(DEPTH).threads(threads).parallelism(parallelism));
+			}
+		}
+
+		compareMcts(positions, new MctsOptions(), new SearchOptions());
+		for (MctsOptions.Parallelism parallelism : MctsOptions.Parallelism.values()) {
+			for (int threads = 1; threads <= maxThreads; threads++) {
+				compareMctsThreads(positions, new MctsOptions().threads(threads).parallelism(parallelism));
+			}
+		}
+	}
+
+	/**
+	 * Searches the positions with one MctsAgent, TIME_LIMIT_MILLIS each, and prints the playouts per second.
+	 * @param positions is the positions.
+	 * @param options is the search settings.
+	 */
+	static void compareMctsThreads(List<OctiState> positions, MctsOptions options) {
+		MctsAgent agent = new MctsAgent(options);
+		long totalPlayouts = 0;
+		long totalTime = 0;
+		for (OctiState position : positions) {
+			setPlayers(agent, position, TIME_LIMIT_MILLIS);
+			agent.getNextMove(position);
+			totalPlayouts += agent.getStatistics().playouts;
+			totalTime += agent.getStatistics().elapsedMillis;
+		}
+		System.out.println(options + ": " + totalPlayouts * 1000 / Math.max(1, totalTime) + " playouts/s");
+	}
+
+	/**
+	 * Searches the positions with an MctsAgent and a StudentAgent, TIME_LIMIT_MILLIS each, and prints their speeds.
+	 * @param positions is the positions.
+	 * @param mctsOptions is the settings of the Monte Carlo search.
+	 * @param searchOptions is the settings of the alpha-beta search.
+	 */
+	static void compareMcts(List<OctiState> positions, MctsOptions mctsOptions, SearchOptions searchOptions) {
+		MctsAgent mctsAgent = new MctsAgent(mctsOptions);
+		StudentAgent studentAgent = new StudentAgent(searchOptions);
+		long totalPlayouts = 0;
+		long totalMctsTime = 0;
+		long totalNodes = 0;
+		long totalSearchTime = 0;
+		int totalDepth = 0;
+		for (int i = 0; i < positions.size(); i++) {
+			OctiState position = positions.get(i);
+			setPlayers(mctsAgent, position, TIME_LIMIT_MILLIS);
+			mctsAgent.getNextMove(position);
+			MctsStatistics mctsStatistics = mctsAgent.getStatistics();
+			setPlayers(studentAgent, position, TIME_LIMIT_MILLIS);
+			studentAgent.getNextMove(position);
+			SearchStatistics searchStatistics = studentAgent.getStatistics();
+			totalPlayouts += mctsStatistics.playouts;
+			totalMctsTime += mctsStatistics.elapsedMillis;
+			totalNodes += searchStatistics.nodes;
+			totalSearchTime += searchStatistics.elapsedMillis;
+			totalDepth += searchStatistics.completedDepth;
+			System.out.println(mctsOptions + ", position " + i + ": " + mctsStatistics);
+		}
+		System.out.println(mctsOptions + ", " + TIME_LIMIT_MILLIS + " ms per position: "
+				+ totalPlayouts * 1000 / Math.max(1, totalMctsTime) + " playouts/s, alpha-beta "
+				+ totalNodes * 1000 / Math.max(1, totalSearchTime) + " nodes/s, average depth "
+				+ (double) totalDepth / positions.size());
+	}
+
+	/**
+	 * Searches the positions with one agent and prints the nodes per second and average time to each depth.
+	 * @param positions is the positions.
+	 * @param options is the search settings.
+	 */
+	static void compareThreads(List<OctiState> positions, SearchOptions options) {
+		StudentAgent agent = new StudentAgent(options);
+		long totalNodes = 0;
+		long totalTime = 0;
+		long[] depthTime = new long[DEPTH + 1];
+		for (OctiState position : positions) {
+			SearchStatistics statistics = search(agent, position);
+			totalNodes += statistics.nodes;
+			totalTime += statistics.elapsedMillis;
+			for (int depth = 1; depth <= DEPTH; depth++) {
+				depthTime[depth] += statistics.depthMillis[depth];
+			}
+		}
+		StringBuilder line = new StringBuilder(options + ": " + totalNodes * 1000 / Math.max(1, totalTime)
+				+ " nodes/s, average time to depth");
+		for (int depth = 1; depth <= DEPTH; depth++) {
+			line.append(' ').append(depth).append(": ").append(depthTime[depth] / positions.size()).append(" ms");
+		}
+		System.out.println(line);
+	}
+
+	/**
+	 * Searches a position with the agent playing the side to move and no time limit.
+	 * @param agent is the agent.
+	 * @param state is the position.
+	 * @return the statistics of the search.
+	 */
+	static SearchStatistics search(StudentAgent agent, OctiState state) {
+		setPlayers(agent, state, Long.MAX_VALUE / 2);
+		agent.getNextMove(state);
+		return agent.getStatistics();
+	}
+
+	/**
+	 * Lets an agent play the side to move of a position.
+	 * @param agent is the agent.
+	 * @param state is the position.
+	 * @param timeLimit is the agent's time per move, in milliseconds.
+	 */
+	static void setPlayers(Agent agent, OctiState state, long timeLimit) {
+		Player current = state.getCurrentPlayer();
+		Player opponent = current.equals(state.getRedPlayer()) ? state.getBlackPlayer() : state.getRedPlayer();
+		agent.setPlayersAndTimeLimit(current, opponent, timeLimit);
+	}
+
+	/**
+	 * Plays random games from the start position and collects positions along the way.
+	 * @param random is the source of the random moves.
+	 * @param count is the number of positions.
+	 * @return positions without a winner.
+	 */
+	static List<OctiState> positions(Random random, int count) {
+		List<OctiState> positions = new ArrayList<>();
+		while (positions.size() < count) {
+			OctiState state = OctiState.createBasicMode();
+			int plies = 4 + random.nextInt(30);
+			for (int ply = 0; ply < plies && state.hasWinner() == null; ply++) {
+				List<OctiAction> actions = state.getLegalActions();
+				state = state.performAction(actions.get(random.nextInt(actions.size())));
+			}
+			if (state.hasWinner() == null) {
+				positions.add(state);
+			}
+		}
+		return positions;
+	}
+}
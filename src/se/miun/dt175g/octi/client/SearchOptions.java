@@ -0,0 +1,334 @@
+package se.miun.dt175g.octi.client;
+
+
+/**
+ * SearchOptions holds the settings of a StudentAgent search. The setters return the options so that they can be
+ * chained, e.g. {@code new SearchOptions().mode(SearchOptions.Mode.ALPHA_BETA).maxDepth(4)}.
+ */
+public final class SearchOptions {
+
+	/**
+	 * The algorithm used for the minimax search.
+	 */
+	public enum Mode {
+		/** Plain alpha-beta, every move is searched with the full window. */
+		ALPHA_BETA,
+		/** Principal variation search, moves after the first are searched with a null window and only re-searched
+		 * with the full window if they fail high. The default: the re-searches cost about as much as the null
+		 * windows save at depth 5, but from depth 6 on, and in games the search gets to depth 8 and more, it
+		 * searches 10 to 20 percent fewer nodes than plain alpha-beta. */
+		PVS
+	}
+
+	/**
+	 * How the search is spread over the threads when there is more than one.
+	 */
+	public enum Parallelism {
+		/** Every thread runs the whole search, the threads only share the transposition table. */
+		LAZY_SMP,
+		/** Young Brothers Wait, the tree is split between the threads of a fork/join pool. */
+		YBWC
+	}
+
+	/**
+	 * What the agent searches while the opponent thinks about its move.
+	 */
+	public enum Ponder {
+		/** Nothing, the agent is idle on the opponent's time. */
+		OFF,
+		/** The position after the opponent's reply predicted by the last search. If the opponent plays it, the
+		 * ponder search carries on as the search for the agent's move. */
+		PREDICTED,
+		/** The positions after every opponent reply, one iteration at a time, to fill the transposition table for
+		 * whichever reply is played. */
+		ALL
+	}
+
+	private Mode mode = Mode.PVS;
+	private int maxDepth = Searcher.MAX_PLY - 1;
+	private int aspirationWidth = 10000;
+	private int aspirationWidening = 4;
+	private boolean quiescence = true;
+	private boolean nullMove = true;
+	private boolean futilityPruning = true;
+	private boolean razoring = true;
+	private boolean lateMoveReductions = true;
+	private double reductionBase = 0.5;
+	private double reductionDivisor = 2;
+	private String tablebase;
+	private String openingBook;
+	private int threads = 1;
+	private Parallelism parallelism = Parallelism.LAZY_SMP;
+	private Ponder ponder = Ponder.OFF;
+
+	/**
+	 * Sets the search algorithm.
+	 * @param mode is the algorithm.
+	 * @return the options.
+	 */
+	public SearchOptions mode(Mode mode) {
+		if (mode == null) {
+			throw new IllegalArgumentException("The search mode can't be null");
+		}
+		this.mode = mode;
+		return this;
+	}
+
+	/**
+	 * Sets the deepest iteration of the iterative deepening. By default the depth is only limited by the size of
+	 * the search stacks, so the search deepens until the time is up or the result is proven.
+	 * @param maxDepth is the depth in plies, at least 1 and at most 63.
+	 * @return the options.
+	 */
+	public SearchOptions maxDepth(int maxDepth) {
+		if (maxDepth < 1 || maxDepth >= Searcher.MAX_PLY) {
+			throw new IllegalArgumentException("The maximum depth must be between 1 and " + (Searcher.MAX_PLY - 1));
+		}
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+	/**
+	 * Sets the half width of the aspiration window around the expected score of an iteration.
+	 * @param aspirationWidth is the half width in evaluation points, 0 searches every iteration with the full window.
+	 * @return the options.
+	 */
+	public SearchOptions aspirationWidth(int aspirationWidth) {
+		if (aspirationWidth < 0) {
+			throw new IllegalArgumentException("The aspiration width can't be negative");
+		}
+		this.aspirationWidth = aspirationWidth;
+		return this;
+	}
+
+	/**
+	 * Sets how much the aspiration window grows on the failing side after a fail-low or fail-high.
+	 * @param aspirationWidening is the factor the half width is multiplied by, at least 2.
+	 * @return the options.
+	 */
+	public SearchOptions aspirationWidening(int aspirationWidening) {
+		if (aspirationWidening < 2) {
+			throw new IllegalArgumentException("The aspiration widening must be at least 2");
+		}
+		this.aspirationWidening = aspirationWidening;
+		return this;
+	}
+
+	/**
+	 * Sets whether capturing jumps and base entries are searched past the horizon.
+	 * @param quiescence is true to run the quiescence search at the horizon, false to evaluate directly.
+	 * @return the options.
+	 */
+	public SearchOptions quiescence(boolean quiescence) {
+		this.quiescence = quiescence;
+		return this;
+	}
+
+	/**
+	 * Sets whether the search tries null move pruning, passing the turn to see whether a node fails high even
+	 * without moving.
+	 * @param nullMove is true to use null move pruning.
+	 * @return the options.
+	 */
+	public SearchOptions nullMove(boolean nullMove) {
+		this.nullMove = nullMove;
+		return this;
+	}
+
+	/**
+	 * Sets whether quiet moves are skipped one and two plies from the horizon when the static evaluation is too far
+	 * outside the window for them to matter.
+	 * @param futilityPruning is true to use futility pruning.
+	 * @return the options.
+	 */
+	public SearchOptions futilityPruning(boolean futilityPruning) {
+		this.futilityPruning = futilityPruning;
+		return this;
+	}
+
+	/**
+	 * Sets whether nodes up to three plies from the horizon drop into the quiescence search when the static
+	 * evaluation is far outside the window. Razoring is only done when the quiescence search is on.
+	 * @param razoring is true to use razoring.
+	 * @return the options.
+	 */
+	public SearchOptions razoring(boolean razoring) {
+		this.razoring = razoring;
+		return this;
+	}
+
+	/**
+	 * Sets whether quiet moves that come late in the move order are searched with a reduced depth first, and only
+	 * searched again with the full depth if they fail high.
+	 * @param lateMoveReductions is true to use late move reductions.
+	 * @return the options.
+	 */
+	public SearchOptions lateMoveReductions(boolean lateMoveReductions) {
+		this.lateMoveReductions = lateMoveReductions;
+		return this;
+	}
+
+	/**
+	 * Sets the reduction that every late move gets, see {@link #reductionDivisor(double)}.
+	 * @param reductionBase is the base reduction in plies.
+	 * @return the options.
+	 */
+	public SearchOptions reductionBase(double reductionBase) {
+		if (reductionBase < 0) {
+			throw new IllegalArgumentException("The reduction base can't be negative");
+		}
+		this.reductionBase = reductionBase;
+		return this;
+	}
+
+	/**
+	 * Sets how fast the late move reductions grow. A move searched as the i:th move of a node with depth d is reduced
+	 * by base + ln(d) * ln(i) / divisor plies, rounded down to an even number.
+	 * @param reductionDivisor is the divisor, greater than 0. Smaller values reduce more.
+	 * @return the options.
+	 */
+	public SearchOptions reductionDivisor(double reductionDivisor) {
+		if (!(reductionDivisor > 0)) {
+			throw new IllegalArgumentException("The reduction divisor must be greater than 0");
+		}
+		this.reductionDivisor = reductionDivisor;
+		return this;
+	}
+
+	/**
+	 * Sets the endgame tablebase file written by {@link TablebaseGenerator}. The search looks up every position with a
+	 * single pod per side and no prongs to place in it.
+	 * @param tablebase is the path of the file, or null to search without a tablebase.
+	 * @return the options.
+	 */
+	public SearchOptions tablebase(String tablebase) {
+		this.tablebase = tablebase;
+		return this;
+	}
+
+	/**
+	 * Sets the opening book file written by {@link OpeningBookBuilder}. The agent plays the book move without
+	 * searching whenever the position is in the book.
+	 * @param openingBook is the path of the file, or null to play without a book.
+	 * @return the options.
+	 */
+	public SearchOptions openingBook(String openingBook) {
+		this.openingBook = openingBook;
+		return this;
+	}
+
+	/**
+	 * Sets the number of search threads. With more than one thread the agent runs a Lazy SMP search with one
+	 * main thread and threads - 1 helpers.
+	 * @param threads is the number of threads, at least 1.
+	 * @return the options.
+	 */
+	public SearchOptions threads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of threads must be at least 1");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Sets how the search is spread over the threads, this only matters with more than one thread.
+	 * @param parallelism is the parallel search scheme.
+	 * @return the options.
+	 */
+	public SearchOptions parallelism(Parallelism parallelism) {
+		if (parallelism == null) {
+			throw new IllegalArgumentException("The parallelism can't be null");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Sets what the agent searches on the opponent's time. Pondering only happens when the agent is driven by a
+	 * {@link GameClient}.
+	 * @param ponder is the pondering mode.
+	 * @return the options.
+	 */
+	public SearchOptions ponder(Ponder ponder) {
+		if (ponder == null) {
+			throw new IllegalArgumentException("The ponder mode can't be null");
+		}
+		this.ponder = ponder;
+		return this;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public int getAspirationWidth() {
+		return aspirationWidth;
+	}
+
+	public int getAspirationWidening() {
+		return aspirationWidening;
+	}
+
+	public boolean isQuiescence() {
+		return quiescence;
+	}
+
+	public boolean isNullMove() {
+		return nullMove;
+	}
+
+	public boolean isFutilityPruning() {
+		return futilityPruning;
+	}
+
+	public boolean isRazoring() {
+		return razoring;
+	}
+
+	public boolean isLateMoveReductions() {
+		return lateMoveReductions;
+	}
+
+	public double getReductionBase() {
+		return reductionBase;
+	}
+
+	public double getReductionDivisor() {
+		return reductionDivisor;
+	}
+
+	public String getTablebase() {
+		return tablebase;
+	}
+
+	public String getOpeningBook() {
+		return openingBook;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public Parallelism getParallelism() {
+		return parallelism;
+	}
+
+	public Ponder getPonder() {
+		return ponder;
+	}
+
+	@Override
+	public String toString() {
+		return mode + ", depth " + maxDepth + ", aspiration " + aspirationWidth + " x" + aspirationWidening
+				+ (quiescence ? ", quiescence" : "") + (nullMove ? ", null move" : "")
+				+ (futilityPruning ? ", futility" : "") + (razoring ? ", razoring" : "")
+				+ (lateMoveReductions ? ", reductions " + reductionBase + "/" + reductionDivisor : "") + (tablebase != null ? ", tablebase" : "")
+				+ (openingBook != null ? ", opening book" : "") + ", threads " + threads
+				+ (threads > 1 ? " " + parallelism : "") + (ponder != Ponder.OFF ? ", ponder " + ponder : "");
+	}
+}
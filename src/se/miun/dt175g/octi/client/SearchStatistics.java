@@ -0,0 +1,120 @@
+package se.miun.dt175g.octi.client;
+
+import java.util.Arrays;
+
+
+/**
+ * Counters collected by StudentAgent during its latest search, used to compare search settings on the same
+ * positions. The counters are reset at the start of every search.
+ */
+final class SearchStatistics {
+	long nodes; // Calls to minimax, including the ones answered by the transposition table.
+	long quiescenceNodes; // Nodes searched by the quiescence search, also counted in nodes.
+	long deltaPrunes; // Captures skipped by delta pruning in the quiescence search.
+	long researches; // PVS null window searches that failed high and were searched again with the full window.
+	long aspirationFailLows; // Root searches that scored below the aspiration window.
+	long aspirationFailHighs; // Root searches that scored above the aspiration window.
+	long nullMoves; // Null move searches.
+	long nullMoveCutoffs; // Nodes pruned because the null move search and its verification failed high or low.
+	long nullMoveVerificationFails; // Null move cutoffs that the verification search didn't confirm.
+	long futilityPrunes; // Quiet moves skipped by futility pruning.
+	long razorPrunes; // Nodes left in the quiescence search by razoring.
+	long tablebaseHits; // Nodes answered by the endgame tablebase.
+	long reductions; // Late moves searched with a reduced depth.
+	long reductionResearches; // Reduced searches that failed high and were searched again with the full depth.
+	long cutoffs; // Nodes that failed high or low before searching every move.
+	long firstMoveCutoffs; // Cutoffs caused by the first move searched, a measure of the move ordering.
+	long splitNodes; // Nodes where a Young Brothers Wait search forked the young brothers.
+	long cancelledTasks; // Forked young brothers cancelled because a sibling caused a cutoff.
+	boolean bookMove; // The move came from the opening book, nothing was searched.
+	int startDepth; // The first iteration, deeper than 1 when the previous move's search already proved the position.
+	int completedDepth; // The deepest iteration that finished before the time ran out.
+	boolean provenResult; // The search stopped early because it proved a win or a loss.
+	long elapsedMillis;
+	final long[] depthMillis = new long[Searcher.MAX_PLY]; // Time from the start of the search to the end of each iteration.
+
+	void clear() {
+		nodes = 0;
+		quiescenceNodes = 0;
+		deltaPrunes = 0;
+		researches = 0;
+		aspirationFailLows = 0;
+		aspirationFailHighs = 0;
+		nullMoves = 0;
+		nullMoveCutoffs = 0;
+		nullMoveVerificationFails = 0;
+		futilityPrunes = 0;
+		razorPrunes = 0;
+		tablebaseHits = 0;
+		reductions = 0;
+		reductionResearches = 0;
+		cutoffs = 0;
+		firstMoveCutoffs = 0;
+		splitNodes = 0;
+		cancelledTasks = 0;
+		bookMove = false;
+		startDepth = 0;
+		completedDepth = 0;
+		provenResult = false;
+		elapsedMillis = 0;
+		Arrays.fill(depthMillis, 0);
+	}
+
+	/**
+	 * Adds the counters of a helper search. The depth and times are those of the main search.
+	 * @param other is the statistics of a main or helper searcher.
+	 * @param main is whether the statistics are the main searcher's.
+	 */
+	void add(SearchStatistics other, boolean main) {
+		nodes += other.nodes;
+		quiescenceNodes += other.quiescenceNodes;
+		deltaPrunes += other.deltaPrunes;
+		researches += other.researches;
+		aspirationFailLows += other.aspirationFailLows;
+		aspirationFailHighs += other.aspirationFailHighs;
+		nullMoves += other.nullMoves;
+		nullMoveCutoffs += other.nullMoveCutoffs;
+		nullMoveVerificationFails += other.nullMoveVerificationFails;
+		futilityPrunes += other.futilityPrunes;
+		razorPrunes += other.razorPrunes;
+		tablebaseHits += other.tablebaseHits;
+		reductions += other.reductions;
+		reductionResearches += other.reductionResearches;
+		cutoffs += other.cutoffs;
+		firstMoveCutoffs += other.firstMoveCutoffs;
+		splitNodes += other.splitNodes;
+		cancelledTasks += other.cancelledTasks;
+		if (main) {
+			bookMove = other.bookMove;
+			startDepth = other.startDepth;
+			completedDepth = other.completedDepth;
+			provenResult = other.provenResult;
+			elapsedMillis = other.elapsedMillis;
+			System.arraycopy(other.depthMillis, 0, depthMillis, 0, depthMillis.length);
+		}
+	}
+
+	/**
+	 * Calculates the search speed.
+	 * @return the nodes searched per second by all threads together.
+	 */
+	long nodesPerSecond() {
+		return nodes * 1000 / Math.max(1, elapsedMillis);
+	}
+
+	@Override
+	public String toString() {
+		if (bookMove) {
+			return "book move, " + elapsedMillis + " ms";
+		}
+		return "depth " + (startDepth > 1 ? startDepth + "-" : "") + completedDepth + (provenResult ? " (proven)" : "") + ", nodes " + nodes + " (quiescence " + quiescenceNodes + ", delta prunes " + deltaPrunes + ")"
+				+ (splitNodes > 0 ? ", split nodes " + splitNodes + ", cancelled tasks " + cancelledTasks : "")
+				+ (nullMoves > 0 ? ", null moves " + nullMoves + " (cutoffs " + nullMoveCutoffs + ", verification fails " + nullMoveVerificationFails + ")" : "")
+				+ ", futility prunes " + futilityPrunes + ", razor prunes " + razorPrunes
+				+ (tablebaseHits > 0 ? ", tablebase hits " + tablebaseHits : "")
+				+ (reductions > 0 ? ", reductions " + reductions + " (re-searched " + reductionResearches + ")" : "")
+				+ ", re-searches " + researches
+				+ ", aspiration fails " + aspirationFailLows + " low / " + aspirationFailHighs + " high"
+				+ ", first move cutoffs " + (cutoffs == 0 ? 0 : 100 * firstMoveCutoffs / cutoffs) + "%, " + elapsedMillis + " ms";
+	}
+}
@@ -0,0 +1,894 @@
+package se.miun.dt175g.octi.client;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+
+/**
+ * Searcher runs the iterative deepening minimax search of a StudentAgent on its own copy of the position. It owns
+ * everything a search thread writes to except the transposition table, which is shared by all searchers of an
+ * agent. A Lazy SMP search runs one main searcher and a number of helpers at the same time; the helpers only help
+ * by filling the shared table, and vary their start depth and move ordering so that they don't all search the same
+ * nodes in the same order.
+ * <p>
+ * A Young Brothers Wait search uses one searcher per pool thread for the subtrees below its split points, see
+ * {@link #searchSubtree}.
+ */
+final class Searcher {
+	static final int MAX_PLY = 64;
+	static final int WIN = 100000000; // The score of a win, a win n plies from the root scores WIN - n.
+	static final int WIN_BOUND = WIN - MAX_PLY; // Scores beyond this are proven wins or losses.
+	private static final int NULL_MOVE_MIN_DEPTH = 3;
+	private static final int NULL_MOVE_DEEP_DEPTH = 7; // From this depth on the null move search is reduced more.
+	private static final int VERIFICATION_DEPTH = 5; // Null move cutoffs from this depth on are verified.
+	private static final int[] FUTILITY_MARGINS = {0, 500, 10000 + 500}; // By depth, a pod and a step plus a pod.
+	private static final int[] RAZOR_MARGINS = {0, 10000, 20000, 30000}; // By depth, a step per ply.
+	private static final int SAFE_DISTANCE = 3; // Pods nearer the opponent's base turn off futility and razoring.
+	private static final int REDUCTION_MIN_DEPTH = 3;
+	private static final int FULL_DEPTH_MOVES = 3; // Moves of a node searched with the full depth in any case.
+	private static final int REDUCTION_MOVES = 64; // Later moves get the reduction of this move index.
+
+	private final SearchOptions options;
+	private final TranspositionTable transpositionTable;
+	private final Tablebase tablebase; // Null when the agent has no tablebase.
+	private final TranspositionTable.Entry entry = new TranspositionTable.Entry();
+	private final SearchStatistics statistics = new SearchStatistics();
+	private final MovePicker[] pickers = new MovePicker[MAX_PLY];
+	private final MoveList[] searchedQuiets = new MoveList[MAX_PLY];
+	private final MoveHistory moveHistory = new MoveHistory(MAX_PLY);
+	private final MoveList[] quiescenceMoves = new MoveList[MAX_PLY];
+	private final MoveList baseEntries = new MoveList();
+	private final boolean[] nullMoveDisabled = new boolean[MAX_PLY]; // Set for the node a verification search runs at.
+	private final int[][] reductions = new int[MAX_PLY][REDUCTION_MOVES]; // By depth and move index.
+	private final CompactState state = new CompactState();
+	private final int id;
+	private AtomicBoolean stop;
+	private TimeManager timeManager;
+	private BooleanSupplier abort; // Set while searching a subtree of a parallel search, tells when it is no longer needed.
+	private long startNanos;
+	private int pollCountdown; // Nodes left until the next look at the clock.
+	private long rootBestMove;
+	private boolean timeUp;
+	private int us;
+	private int them;
+
+	/**
+	 * Creates a searcher and preallocates its per ply move pickers and lists.
+	 * @param options is the search settings.
+	 * @param transpositionTable is the table shared by the searchers of the agent.
+	 * @param tablebase is the endgame tablebase, or null.
+	 * @param id is 0 for the main searcher and 1 and up for the helpers, it is also the move ordering variation.
+	 */
+	Searcher(SearchOptions options, TranspositionTable transpositionTable, Tablebase tablebase, int id) {
+		this(options, transpositionTable, tablebase, id, id);
+	}
+
+	/**
+	 * Creates a searcher with a move ordering variation of its own, for a main searcher whose ordering should
+	 * still differ from run to run, see {@link OpeningBookBuilder}.
+	 * @param options is the search settings.
+	 * @param transpositionTable is the table shared by the searchers of the agent.
+	 * @param tablebase is the endgame tablebase, or null.
+	 * @param id is 0 for the main searcher and 1 and up for the helpers.
+	 * @param variation is the move ordering noise seed, 0 keeps the plain ordering.
+	 */
+	Searcher(SearchOptions options, TranspositionTable transpositionTable, Tablebase tablebase, int id, int variation) {
+		this.options = options;
+		this.transpositionTable = transpositionTable;
+		this.tablebase = tablebase;
+		this.id = id;
+		for (int ply = 0; ply < MAX_PLY; ply++) {
+			pickers[ply] = new MovePicker(variation);
+			searchedQuiets[ply] = new MoveList();
+			quiescenceMoves[ply] = new MoveList();
+		}
+		initReductions();
+	}
+
+	/**
+	 * Fills the late move reduction table from the options. The reductions are rounded down to an even number of
+	 * plies: the evaluation alternates with the parity of the horizon, and a reduced search with an odd reduction
+	 * would end on the other parity, where its scores can't be compared with the bounds.
+	 */
+	private void initReductions() {
+		if (!options.isLateMoveReductions()) {
+			return;
+		}
+		for (int depth = REDUCTION_MIN_DEPTH; depth < MAX_PLY; depth++) {
+			for (int index = FULL_DEPTH_MOVES; index < REDUCTION_MOVES; index++) {
+				double reduction = options.getReductionBase()
+						+ Math.log(depth) * Math.log(index) / options.getReductionDivisor();
+				reductions[depth][index] = Math.min((int) reduction, depth - 1) & ~1;
+			}
+		}
+	}
+
+	/**
+	 * Runs the iterative deepening search on a position. The main searcher starts at startDepth, odd numbered
+	 * helpers start one ply deeper so that the threads are spread over two depths.
+	 * @param root is the position to search, it is copied.
+	 * @param us is the color the search maximizes for.
+	 * @param startNanos is when the search started, from System.nanoTime().
+	 * @param startDepth is the depth of the first iteration, deeper than 1 when the transposition table already
+	 * holds the shallower results.
+	 * @param maxDepth is the depth of the last iteration.
+	 * @param timeManager is the agent's time manager, the agent may move the deadline while the search runs.
+	 * @param stop is set by the agent to stop the search early.
+	 * @return the best move of the deepest completed iteration, or Move.NONE if none completed.
+	 */
+	long search(CompactState root, int us, long startNanos, int startDepth, int maxDepth, TimeManager timeManager,
+			AtomicBoolean stop) {
+		prepare(us, startNanos, timeManager, stop);
+		abort = null;
+		timeUp = false;
+		rootBestMove = Move.NONE;
+		state.copyFrom(root);
+		long bestMove = Move.NONE;
+		int[] scores = new int[maxDepth + 1];
+		int firstDepth = startDepth + id % 2;
+		statistics.startDepth = firstDepth;
+		long iterationStart = startNanos;
+		long[] iterationNanos = new long[maxDepth + 1];
+
+		// Iterative deepening DFS minimax with alpha-beta pruning, the transposition table carries the bounds
+		// and best moves of one iteration over to the next.
+		for (int depth = firstDepth; depth <= maxDepth; depth++) {
+			// The evaluation counts the distance to the goal of the side that made the last move, so the score
+			// swings between odd and even depths. The window is centred on the iteration with the same parity,
+			// the first two iterations have none to centre on.
+			boolean centred = depth - 2 >= firstDepth;
+			scores[depth] = aspirationSearch(depth, centred, centred ? scores[depth - 2] : 0);
+
+			// If the iteration stopped early, break out of the loop and return the best action so far. timeUp is
+			// latched by the polls, so an iteration that completed is kept even if the deadline has passed since.
+			if (timeUp) {
+				break;
+			}
+			bestMove = rootBestMove;
+			long now = System.nanoTime();
+			statistics.completedDepth = depth;
+			statistics.depthMillis[depth] = (now - startNanos) / 1000000;
+
+			// A proven win or loss won't change with more depth.
+			if (Math.abs(scores[depth]) >= WIN_BOUND) {
+				statistics.provenResult = true;
+				break;
+			}
+
+			// The agent stops the helpers when the main searcher is done.
+			if (stop.get()) {
+				break;
+			}
+
+			// Don't start an iteration that won't finish. The helpers are stopped by the main searcher instead.
+			iterationNanos[depth] = now - iterationStart;
+			iterationStart = now;
+			if (id == 0 && !timeManager.canStartIteration(iterationNanos, depth, firstDepth)) {
+				break;
+			}
+		}
+		statistics.elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+		return bestMove;
+	}
+
+	/**
+	 * Sets up the searcher for a search: resets the statistics. The history is aged separately, once per move of
+	 * the game, see {@link #ageHistory()}.
+	 * @param us is the color the search maximizes for.
+	 * @param startNanos is when the search started, from System.nanoTime().
+	 * @param timeManager is the agent's time manager.
+	 * @param stop is set by the agent to stop the search early.
+	 */
+	void prepare(int us, long startNanos, TimeManager timeManager, AtomicBoolean stop) {
+		this.us = us;
+		this.them = 1 - us;
+		this.startNanos = startNanos;
+		this.timeManager = timeManager;
+		pollCountdown = TimeManager.POLL_INTERVAL;
+		this.stop = stop;
+		statistics.clear();
+	}
+
+	/**
+	 * Ages the killers and the history for a new move of the game. A ponder session that runs many searches ages
+	 * them once, so the search after it still has their move ordering.
+	 */
+	void ageHistory() {
+		moveHistory.age();
+	}
+
+	/**
+	 * Searches a subtree for a parallel search, with the same rules as the serial search. The searcher must have
+	 * been prepared for the current move; the statistics and history carry over between the subtrees of a move.
+	 * @param position is the position at the top of the subtree, it is copied.
+	 * @param lastMove is the move that led to the position.
+	 * @param ply is the distance from the root.
+	 * @param depth is the remaining depth.
+	 * @param alpha is the alpha value for alpha-beta pruning.
+	 * @param beta is the beta value for alpha-beta pruning.
+	 * @param isMaximizingPlayer is a boolean stating whether it is currently min or max.
+	 * @param abort tells when the result is no longer needed, the search then returns an unreliable score.
+	 * @return the score of the position.
+	 */
+	int searchSubtree(CompactState position, long lastMove, int ply, int depth, int alpha, int beta,
+			boolean isMaximizingPlayer, BooleanSupplier abort) {
+		this.abort = abort;
+		timeUp = false;
+		state.copyFrom(position);
+		return minimax(lastMove, ply, depth, alpha, beta, isMaximizingPlayer);
+	}
+
+	/**
+	 * Returns the counters of the latest search.
+	 * @return the statistics, overwritten by the next search.
+	 */
+	SearchStatistics getStatistics() {
+		return statistics;
+	}
+
+	MoveHistory getMoveHistory() {
+		return moveHistory;
+	}
+
+	/**
+	 * Tells whether the latest search or subtree stopped before it was done.
+	 * @return true if the returned score is unreliable.
+	 */
+	boolean isStopped() {
+		return timeUp;
+	}
+
+	/**
+	 * Checks whether the search has to stop, because the hard deadline has passed, because the agent said so or
+	 * because a parallel search no longer needs the subtree.
+	 * @return true if the search should return.
+	 */
+	private boolean isTimeUp() {
+		return stop.get() || (abort != null && abort.getAsBoolean()) || timeManager.isTimeUp();
+	}
+
+	/**
+	 * Looks at the clock once every {@link TimeManager#POLL_INTERVAL} nodes and sets timeUp when the search has to
+	 * stop.
+	 */
+	private void poll() {
+		if (--pollCountdown <= 0) {
+			pollCountdown = TimeManager.POLL_INTERVAL;
+			if (isTimeUp()) {
+				timeUp = true;
+			}
+		}
+	}
+
+	/**
+	 * Searches the root to the given depth with an aspiration window around an expected score. When the score falls
+	 * outside the window the window is widened on that side and the root is searched again, until the score lands
+	 * inside it. Iterations without a previous score, and every iteration when the width is 0, use the full window.
+	 * @param depth is the depth of the iteration.
+	 * @param hasPreviousScore is whether the iteration two plies shallower was searched.
+	 * @param previousScore is the score of the iteration two plies shallower.
+	 * @return the score of the root, or an unreliable value if the time ran out.
+	 */
+	private int aspirationSearch(int depth, boolean hasPreviousScore, int previousScore) {
+		int delta = options.getAspirationWidth();
+		int alpha = Integer.MIN_VALUE;
+		int beta = Integer.MAX_VALUE;
+		if (hasPreviousScore && delta > 0) {
+			alpha = windowBound(previousScore, -delta);
+			beta = windowBound(previousScore, delta);
+		}
+		long previousBestMove = rootBestMove;
+		while (true) {
+			int score = minimax(Move.NONE, 0, depth, alpha, beta, true);
+			if (timeUp) {
+				return score;
+			}
+			if (score <= alpha && alpha != Integer.MIN_VALUE) {
+
+				// Every root move failed low, the move set by the failed search is no better than the others.
+				statistics.aspirationFailLows++;
+				rootBestMove = previousBestMove;
+				delta *= options.getAspirationWidening();
+				alpha = windowBound(score, -delta);
+			} else if (score >= beta && beta != Integer.MAX_VALUE) {
+				statistics.aspirationFailHighs++;
+				delta *= options.getAspirationWidening();
+				beta = windowBound(score, delta);
+			} else {
+				return score;
+			}
+		}
+	}
+
+	/**
+	 * Moves a score by an offset without overflowing, offsets beyond the win scores open the window fully.
+	 * @param score is the score.
+	 * @param offset is the offset.
+	 * @return the window bound.
+	 */
+	static int windowBound(int score, int offset) {
+		long bound = (long) score + offset;
+		if (bound <= -WIN_BOUND) {
+			return Integer.MIN_VALUE;
+		}
+		return bound >= WIN_BOUND ? Integer.MAX_VALUE : (int) bound;
+	}
+
+	/**
+	 * Conducts an iterative deepening minimax search with alpha-beta pruning to find the best move. The searched
+	 * position is the searcher's state, which is the same when the method returns as when it was called. The best
+	 * move of the root is left in rootBestMove.
+	 * <p>
+	 * In PVS mode the first move is searched with the full window and the others with a null window around the
+	 * bound the node is trying to improve. A move that lands inside the window is better than the first move after
+	 * all, and is searched again with the full window to get its exact score.
+	 * @param lastMove is the move that led to the state.
+	 * @param ply is the distance from the root.
+	 * @param depth is the current depth of the search.
+	 * @param alpha is the alpha value for alpha-beta pruning.
+	 * @param beta is the beta value for alpha-beta pruning.
+	 * @param isMaximizingPlayer is a boolean stating whether it is currently min or max.
+	 * @return the score of the state.
+	 */
+	private int minimax(long lastMove, int ply, int depth, int alpha, int beta, boolean isMaximizingPlayer) {
+		long bestMove = Move.NONE;
+		int bestScore;
+		int originalAlpha = alpha;
+		int originalBeta = beta;
+		int searchedMoves = 0;
+		statistics.nodes++;
+
+		// Check if the recursive search needs to be terminated because of state/depth/time limit.
+		poll();
+		if (state.winner() != CompactState.NO_WINNER || depth == 0 || timeUp || ply == MAX_PLY - 1) {
+			if (depth == 0 && !timeUp && options.isQuiescence()) {
+				statistics.nodes--; // Counted again by the quiescence search.
+				return quiescence(ply, alpha, beta, isMaximizingPlayer, isMaximizingPlayer);
+			}
+			return evaluate(isMaximizingPlayer, ply);
+		}
+
+		// Mate distance pruning. Neither side can win sooner than with its next move, so if a win that near is
+		// already outside the window the node can't change the result.
+		int mateScore = WIN - ply - 1;
+		if (ply > 0 && alpha >= mateScore) {
+			return mateScore;
+		}
+		if (ply > 0 && beta <= -mateScore) {
+			return -mateScore;
+		}
+
+		// A pod against a pod without prongs to place is looked up in the tablebase, which knows the exact result.
+		if (ply > 0 && tablebase != null) {
+			int distance = tablebase.probe(state);
+			if (distance != Tablebase.NOT_FOUND) {
+				statistics.tablebaseHits++;
+				return tablebaseScore(distance, ply);
+			}
+		}
+
+		// Reuse a stored result that was searched at least as deep, to a horizon of the same parity: the evaluation
+		// swings between odd and even horizons, so a deeper result of the other parity isn't a bound on this one. A
+		// won or lost score doesn't depend on the horizon and is reused either way. The root always searches so
+		// that it has a move.
+		long hashMove = Move.NONE;
+		if (transpositionTable.probe(state.hash(), entry)) {
+			hashMove = entry.move;
+			int score = fromTable(entry.score, ply);
+			if (ply > 0 && entry.depth >= depth && ((entry.depth - depth) % 2 == 0 || Math.abs(score) >= WIN_BOUND)
+					&& (entry.bound == TranspositionTable.EXACT
+					|| (entry.bound == TranspositionTable.LOWER && score >= beta)
+					|| (entry.bound == TranspositionTable.UPPER && score <= alpha))) {
+				return score;
+			}
+		}
+
+		// The static evaluation, taken with the parity of the horizon so that it compares with the scores the
+		// children return.
+		boolean horizonMaximizing = isMaximizingPlayer ^ (depth % 2 == 1);
+		int staticEval = ply > 0 ? evaluate(horizonMaximizing, ply) : 0;
+		boolean nearLeaves = ply > 0 && depth < RAZOR_MARGINS.length && Math.abs(alpha) < WIN_BOUND
+				&& Math.abs(beta) < WIN_BOUND && !isNearGoal(state.sideToMove());
+
+		// Razoring. A node whose static evaluation is far outside the window drops into the quiescence search, and
+		// is left there if that confirms it.
+		if (nearLeaves && options.isRazoring() && options.isQuiescence()
+				&& (isMaximizingPlayer ? staticEval + RAZOR_MARGINS[depth] <= alpha : staticEval - RAZOR_MARGINS[depth] >= beta)) {
+			int score = quiescence(ply, alpha, beta, isMaximizingPlayer, horizonMaximizing);
+			if (!timeUp && (isMaximizingPlayer ? score <= alpha : score >= beta)) {
+				statistics.razorPrunes++;
+				return score;
+			}
+		}
+
+		// Null move pruning.
+		if (ply > 0 && lastMove != Move.NONE && depth >= NULL_MOVE_MIN_DEPTH && options.isNullMove()
+				&& !nullMoveDisabled[ply] && nullMoveCutoff(lastMove, ply, depth, alpha, beta, isMaximizingPlayer, staticEval)) {
+			return isMaximizingPlayer ? beta : alpha;
+		}
+
+		// Futility pruning. Near the horizon, a quiet move can't bring a static evaluation that is a margin outside
+		// the window back into it, so after the first move the quiet ones are skipped.
+		boolean futile = nearLeaves && depth < FUTILITY_MARGINS.length && options.isFutilityPruning()
+				&& (isMaximizingPlayer ? staticEval + FUTILITY_MARGINS[depth] <= alpha : staticEval - FUTILITY_MARGINS[depth] >= beta);
+
+		// Moves are generated stage by stage, explore better branches first.
+		MovePicker picker = pickers[ply];
+		picker.init(state, hashMove, moveHistory, ply, lastMove);
+		MoveList quiets = searchedQuiets[ply];
+		quiets.clear();
+
+		if (isMaximizingPlayer) {
+			bestScore = Integer.MIN_VALUE;
+
+			// Iterate over the children, recursively calling the minimax on them.
+			for (long move = picker.next(); move != Move.NONE; move = picker.next()) {
+
+				// Stop if the time ran out in the previous child.
+				if (timeUp) {
+					return bestScore;
+				}
+
+				if (futile && searchedMoves > 0 && picker.isReducible()) {
+					statistics.futilityPrunes++;
+					continue;
+				}
+				int reduction = reduction(picker, depth, searchedMoves);
+				state.play(move);
+
+				// Return early if we have a winner.
+				if (state.winner() == us) {
+					state.undo();
+					transpositionTable.store(state.hash(), depth, TranspositionTable.EXACT, toTable(mateScore, ply), move);
+					setRootBestMove(ply, move);
+					return mateScore;
+				}
+
+				// A late quiet move is first searched with a reduced depth, and only with the full depth if it
+				// fails high.
+				int score = Integer.MAX_VALUE;
+				if (reduction > 0) {
+					statistics.reductions++;
+					score = minimax(move, ply + 1, depth - 1 - reduction, alpha, alpha + 1, false);
+					if (score > alpha && !timeUp) {
+						statistics.reductionResearches++;
+					}
+				}
+				if (score > alpha && !timeUp) {
+					if (searchedMoves == 0 || options.getMode() == SearchOptions.Mode.ALPHA_BETA) {
+						score = minimax(move, ply + 1, depth - 1, alpha, beta, false);
+					} else {
+						score = minimax(move, ply + 1, depth - 1, alpha, alpha + 1, false);
+						if (score > alpha && score < beta && !timeUp) {
+							statistics.researches++;
+							score = minimax(move, ply + 1, depth - 1, alpha, beta, false);
+						}
+					}
+				}
+				searchedMoves++;
+				state.undo();
+				if (score > bestScore) {
+					bestScore = score;
+					bestMove = move;
+					setRootBestMove(ply, move);
+				}
+
+				// Update the alpha and check if we can break.
+				alpha = Math.max(alpha, bestScore);
+				if (beta <= alpha) {
+					recordCutoff(ply, move, lastMove, depth, searchedMoves);
+					break;
+				}
+				if (Move.captures(move) == 0) {
+					quiets.add(move);
+				}
+			}
+		} else {
+			bestScore = Integer.MAX_VALUE;
+
+			// Iterate over the children, recursively calling the minimax on them.
+			for (long move = picker.next(); move != Move.NONE; move = picker.next()) {
+				// Stop if the time ran out in the previous child.
+				if (timeUp) {
+					return bestScore;
+				}
+
+				if (futile && searchedMoves > 0 && picker.isReducible()) {
+					statistics.futilityPrunes++;
+					continue;
+				}
+				int reduction = reduction(picker, depth, searchedMoves);
+				state.play(move);
+
+				// Return early if we have a winner.
+				if (state.winner() == them) {
+					state.undo();
+					transpositionTable.store(state.hash(), depth, TranspositionTable.EXACT, toTable(-mateScore, ply), move);
+					return -mateScore;
+				}
+
+				// A late quiet move is first searched with a reduced depth, and only with the full depth if it
+				// fails low.
+				int score = Integer.MIN_VALUE;
+				if (reduction > 0) {
+					statistics.reductions++;
+					score = minimax(move, ply + 1, depth - 1 - reduction, beta - 1, beta, true);
+					if (score < beta && !timeUp) {
+						statistics.reductionResearches++;
+					}
+				}
+				if (score < beta && !timeUp) {
+					if (searchedMoves == 0 || options.getMode() == SearchOptions.Mode.ALPHA_BETA) {
+						score = minimax(move, ply + 1, depth - 1, alpha, beta, true);
+					} else {
+						score = minimax(move, ply + 1, depth - 1, beta - 1, beta, true);
+						if (score < beta && score > alpha && !timeUp) {
+							statistics.researches++;
+							score = minimax(move, ply + 1, depth - 1, alpha, beta, true);
+						}
+					}
+				}
+				searchedMoves++;
+				state.undo();
+				if (score < bestScore) {
+					bestScore = score;
+					bestMove = move;
+				}
+
+				// Update the beta and check if we can break.
+				beta = Math.min(beta, bestScore);
+				if (beta <= alpha) {
+					recordCutoff(ply, move, lastMove, depth, searchedMoves);
+					break;
+				}
+				if (Move.captures(move) == 0) {
+					quiets.add(move);
+				}
+			}
+		}
+
+		// Results cut short by the time limit are incomplete and must not be reused.
+		if (!timeUp) {
+			int bound = bestScore <= originalAlpha ? TranspositionTable.UPPER
+					: bestScore >= originalBeta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+			transpositionTable.store(state.hash(), depth, bound, toTable(bestScore, ply), bestMove);
+		}
+		return bestScore;
+	}
+
+	/**
+	 * Turns a tablebase result into a score, with the same distance to the win as if the search had found it.
+	 * @param distance is the number of plies to the end of the game, the side to move wins if it is odd, or
+	 * Tablebase.DRAW.
+	 * @param ply is the distance from the root.
+	 * @return the score.
+	 */
+	private int tablebaseScore(int distance, int ply) {
+		if (distance == Tablebase.DRAW) {
+			return 0;
+		}
+		// Wins past the end of the search stacks are scored as the furthest win the search can tell apart.
+		int plies = Math.min(ply + distance, MAX_PLY - 1);
+		int winner = distance % 2 == 1 ? state.sideToMove() : 1 - state.sideToMove();
+		return winner == us ? WIN - plies : -WIN + plies;
+	}
+
+	/**
+	 * Looks up the late move reduction of the move the picker returned last. The split nodes of a Young Brothers
+	 * Wait search reduce their late moves by the same table.
+	 * @param picker is the node's move picker.
+	 * @param depth is the remaining depth of the node.
+	 * @param index is the number of moves searched before the move.
+	 * @return the reduction in plies, 0 for moves that are searched with the full depth.
+	 */
+	int reduction(MovePicker picker, int depth, int index) {
+		if (!picker.isReducible()) {
+			return 0;
+		}
+		return reductions[depth][Math.min(index, REDUCTION_MOVES - 1)];
+	}
+
+	/**
+	 * Passes the turn and searches the opponent's moves with a reduced depth and a null window at the bound the node
+	 * has to beat. If the node still fails high for the side to move, a real move would almost certainly too, unless
+	 * the position is a zugzwang where every move makes things worse. Octi zugzwangs are rare, but the null move is
+	 * left out where they are more likely:
+	 * <ul>
+	 * <li>when a side has no prongs left, so that it can't make quiet prong placements and has to move its pods,</li>
+	 * <li>when the side to move has a single pod,</li>
+	 * <li>when either side can enter the opposite base with one move, where passing decides the game.</li>
+	 * </ul>
+	 * From VERIFICATION_DEPTH on, a null move cutoff is only taken if a search of the node itself at the reduced
+	 * depth, without another null move, fails high as well.
+	 * <p>
+	 * The reduction is 2, and 4 instead of 3 from NULL_MOVE_DEEP_DEPTH on. An odd reduction would put the horizon
+	 * on the other parity, where the evaluation counts the other side's goal distances and can't be compared with
+	 * the bound.
+	 * @param lastMove is the move that led to the node.
+	 * @param ply is the distance from the root.
+	 * @param depth is the remaining depth of the node.
+	 * @param alpha is the alpha value of the node.
+	 * @param beta is the beta value of the node.
+	 * @param isMaximizingPlayer is whether the node is a max node.
+	 * @param staticEval is the static evaluation of the node, with the parity of the horizon.
+	 * @return true if the node can be pruned, with beta as the score of a max node and alpha as that of a min node.
+	 */
+	private boolean nullMoveCutoff(long lastMove, int ply, int depth, int alpha, int beta, boolean isMaximizingPlayer,
+			int staticEval) {
+		int bound = isMaximizingPlayer ? beta : alpha;
+		if (Math.abs(bound) >= WIN_BOUND || !isNullMoveSafe()) {
+			return false;
+		}
+
+		// Only try it where the evaluation is already past the bound.
+		if (isMaximizingPlayer ? staticEval < beta : staticEval > alpha) {
+			return false;
+		}
+		int reduction = depth >= NULL_MOVE_DEEP_DEPTH ? 4 : 2;
+		statistics.nullMoves++;
+		state.playNull();
+		int score = isMaximizingPlayer
+				? minimax(Move.NONE, ply + 1, depth - 1 - reduction, beta - 1, beta, false)
+				: minimax(Move.NONE, ply + 1, depth - 1 - reduction, alpha, alpha + 1, true);
+		state.undo();
+		if (timeUp || (isMaximizingPlayer ? score < beta : score > alpha)) {
+			return false;
+		}
+
+		if (depth >= VERIFICATION_DEPTH) {
+			nullMoveDisabled[ply] = true;
+			score = isMaximizingPlayer
+					? minimax(lastMove, ply, depth - reduction, beta - 1, beta, true)
+					: minimax(lastMove, ply, depth - reduction, alpha, alpha + 1, false);
+			nullMoveDisabled[ply] = false;
+			if (timeUp || (isMaximizingPlayer ? score < beta : score > alpha)) {
+				statistics.nullMoveVerificationFails++;
+				return false;
+			}
+		}
+		statistics.nullMoveCutoffs++;
+		return true;
+	}
+
+	/**
+	 * Checks whether a side has a pod near the opponent's base. The evaluation only sees the goal distances, so such
+	 * a pod could turn a quiet move into a base entry a few plies later, which futility pruning and razoring would
+	 * miss.
+	 * @param color is the side.
+	 * @return true if a pod of the side is nearer than SAFE_DISTANCE to the opponent's base.
+	 */
+	private boolean isNearGoal(int color) {
+		for (long pods = state.pods(color); pods != 0; pods &= pods - 1) {
+			if (state.distanceToGoal(color, Long.numberOfTrailingZeros(pods)) < SAFE_DISTANCE) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks the zugzwang guards of the null move, see {@link #nullMoveCutoff}.
+	 * @return true if the null move may be tried in the searcher's state.
+	 */
+	private boolean isNullMoveSafe() {
+		int side = state.sideToMove();
+		if (state.prongsLeft(side) == 0 || state.prongsLeft(1 - side) == 0 || state.podCount(side) <= 1) {
+			return false;
+		}
+		baseEntries.clear();
+		state.generateBaseEntries(baseEntries);
+		state.playNull();
+		state.generateBaseEntries(baseEntries);
+		state.undo();
+		return baseEntries.size() == 0;
+	}
+
+	/**
+	 * Searches the capturing jumps and base entries below the horizon until the position is quiet. The side to
+	 * move may always stand pat, that is decline to capture and take the static evaluation, so the score is never
+	 * worse for it than the evaluation.
+	 * <p>
+	 * The evaluation counts the goal distance of only one side depending on isMaximizingPlayer, so scores taken at
+	 * different parities can't be compared. The whole quiescence search therefore evaluates with the parity of the
+	 * horizon node.
+	 * @param ply is the distance from the root.
+	 * @param alpha is the alpha value for alpha-beta pruning.
+	 * @param beta is the beta value for alpha-beta pruning.
+	 * @param isMaximizingPlayer is a boolean stating whether it is currently min or max.
+	 * @param horizonMaximizing is whether the horizon node was a max node, used for every evaluation.
+	 * @return the score of the state.
+	 */
+	private int quiescence(int ply, int alpha, int beta, boolean isMaximizingPlayer, boolean horizonMaximizing) {
+		statistics.nodes++;
+		statistics.quiescenceNodes++;
+		poll();
+		int standPat = evaluate(horizonMaximizing, ply);
+		if (state.winner() != CompactState.NO_WINNER || ply == MAX_PLY - 1) {
+			return standPat;
+		}
+
+		// Stand pat, the side to move isn't forced to capture.
+		if (isMaximizingPlayer) {
+			if (standPat >= beta) {
+				return standPat;
+			}
+			alpha = Math.max(alpha, standPat);
+		} else {
+			if (standPat <= alpha) {
+				return standPat;
+			}
+			beta = Math.min(beta, standPat);
+		}
+
+		// Base entries win on the spot and are tried first, then the captures with the most pods taken.
+		MoveList moves = quiescenceMoves[ply];
+		moves.clear();
+		state.generateBaseEntries(moves);
+		int entries = moves.size();
+		state.generateCaptures(moves);
+		for (int i = 0; i < moves.size(); i++) {
+			moves.setScore(i, i < entries ? Integer.MAX_VALUE : Move.captures(moves.get(i)));
+		}
+
+		int bestScore = standPat;
+		for (int i = 0; i < moves.size(); i++) {
+			long move = moves.pickBest(i);
+
+			// Delta pruning, skip captures that can't bring the score back to the window even in the best case.
+			if (i >= entries) {
+				int gain = captureGain(move, horizonMaximizing);
+				if (isMaximizingPlayer ? (long) standPat + gain <= alpha : (long) standPat - gain >= beta) {
+					statistics.deltaPrunes++;
+					continue;
+				}
+			}
+
+			state.play(move);
+			int score = quiescence(ply + 1, alpha, beta, !isMaximizingPlayer, horizonMaximizing);
+			state.undo();
+			if (isMaximizingPlayer) {
+				bestScore = Math.max(bestScore, score);
+				alpha = Math.max(alpha, score);
+			} else {
+				bestScore = Math.min(bestScore, score);
+				beta = Math.min(beta, score);
+			}
+			if (beta <= alpha) {
+				break;
+			}
+		}
+		return bestScore;
+	}
+
+	/**
+	 * Calculates how much a capture can improve the evaluation at most for the side that plays it: the value of the
+	 * captured pods, their distance score if the evaluation counts the opponent's distances, and the approach of
+	 * the jumping pod if it counts the mover's own distances.
+	 * @param move is a capture from {@link CompactState#generateCaptures}.
+	 * @param horizonMaximizing is the parity the evaluation is taken with.
+	 * @return the largest possible change of the evaluation in the mover's favour.
+	 */
+	private int captureGain(long move, boolean horizonMaximizing) {
+		int mover = state.sideToMove();
+		int counted = horizonMaximizing ? us : them; // The color whose distances the evaluation counts.
+		boolean black = mover == CompactState.BLACK;
+		int gain = 0;
+		int position = Move.from(move);
+		for (int step = 0; step < Move.jumpSteps(move); step++) {
+			int direction = Move.stepDirection(move, step);
+			int jumped = Move.step(position, direction, black);
+			if (Move.stepCaptures(move, step)) {
+				gain += 500;
+				if (counted != mover) {
+					gain += Math.max(0, 10 - state.distanceToGoal(1 - mover, jumped)) * 10000;
+				}
+			}
+			position = Move.step(jumped, direction, black);
+		}
+		if (counted == mover) {
+			gain += Math.max(0, state.distanceToGoal(mover, Move.from(move)) - state.distanceToGoal(mover, position)) * 10000;
+		}
+		return gain;
+	}
+
+	/**
+	 * Converts a score to the form stored in the transposition table. Searched scores count the plies of a win
+	 * from the root, stored ones count them from the stored position, so that an entry is right at any ply.
+	 * @param score is the score of the position.
+	 * @param ply is the distance of the position from the root.
+	 * @return the score to store.
+	 */
+	static int toTable(int score, int ply) {
+		return score >= WIN_BOUND ? score + ply : score <= -WIN_BOUND ? score - ply : score;
+	}
+
+	/**
+	 * Converts a stored score back, the inverse of {@link #toTable}.
+	 * @param score is the stored score.
+	 * @param ply is the distance of the position from the root.
+	 * @return the score of the position.
+	 */
+	static int fromTable(int score, int ply) {
+		return score >= WIN_BOUND ? score - ply : score <= -WIN_BOUND ? score + ply : score;
+	}
+
+	/**
+	 * Remembers the best move found so far at the root.
+	 * @param ply is the distance from the root of the node that found the move.
+	 * @param move is the move.
+	 */
+	private void setRootBestMove(int ply, long move) {
+		if (ply == 0) {
+			rootBestMove = move;
+		}
+	}
+
+	/**
+	 * Counts a cutoff and, for a quiet move, teaches it to the killer, countermove and history tables.
+	 * @param ply is the distance from the root.
+	 * @param move is the move that caused the cutoff.
+	 * @param lastMove is the move that led to the node.
+	 * @param depth is the remaining depth of the node.
+	 * @param searchedMoves is the number of moves searched at the node, including the cutoff move.
+	 */
+	private void recordCutoff(int ply, long move, long lastMove, int depth, int searchedMoves) {
+		statistics.cutoffs++;
+		if (searchedMoves == 1) {
+			statistics.firstMoveCutoffs++;
+		}
+		if (Move.captures(move) == 0) {
+			moveHistory.update(ply, state.sideToMove(), move, lastMove, depth, searchedQuiets[ply]);
+		}
+	}
+
+	/**
+	 * Evaluation function used by the minimax search. The evaluation includes considerations for winning
+	 * or losing states, the number of player's pods and distance to the goal. Capture exchanges are left to the
+	 * quiescence search.
+	 * @param isMaximizingPlayer is a boolean stating whether it is for min or max.
+	 * @param ply is the distance from the root, a win scores less the further away it is.
+	 * @return the evaluation score for the given game state.
+	 */
+	private int evaluate(boolean isMaximizingPlayer, int ply) {
+		int score = 0;
+
+		// Evaluate based on winning or losing states. Return directly to save time.
+		int winner = state.winner();
+		if (winner == us) {
+			return WIN - ply;
+		} else if (winner == them) {
+			return -WIN + ply;
+		}
+
+		// Evaluate based on the number of player's pods.
+		score += state.podCount(us) * 500;
+		score -= state.podCount(them) * 500;
+
+		// Evaluate based on the distance to the goal.
+		score += isMaximizingPlayer
+				? evaluateDistanceToGoal(us)
+				: -evaluateDistanceToGoal(them);
+		return score;
+	}
+
+	/**
+	 * Evaluates the distance to the goal for pods of the specified color on the searcher's state.
+	 * The distance is calculated based on the Manhattan distance from each pod's position to the goal positions.
+	 * @param color is the color of the pods for which the distance to the goal is being evaluated.
+	 * @return the distance score based on the Manhattan distance to the goal for the specified color.
+	 */
+	private int evaluateDistanceToGoal(int color) {
+		int distanceScore = 0;
+
+		// Iterate through each pod on the board.
+		for (long pods = state.pods(color); pods != 0; pods &= pods - 1) {
+
+			// Calculate the Manhattan distance to the goal.
+			int distance = state.distanceToGoal(color, Long.numberOfTrailingZeros(pods));
+
+			// Calculate a score.
+			distanceScore += (10 - distance) * 10000;
+		}
+		return distanceScore;
+	}
+}
@@ -1,9 +1,21 @@
 package se.miun.dt175g.octi.client;
 
 
-import java.util.Comparator;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import se.miun.dt175g.octi.core.*;
 
@@ -11,12 +23,115 @@ import se.miun.dt175g.octi.core.*;
 /**
  * StudentAgent is an implementation of the Octi Agent interface that uses an iterative deepening minimax
  * search with alpha-beta pruning to determine the best move for the current game state.
+ * The search plays and takes back moves on a single CompactState, a bitboard copy of the game state, and reuses
+ * one preallocated MovePicker per ply, so a search doesn't allocate once it is warmed up. The pickers generate
+ * moves in stages, so nodes that get an early cutoff skip most of the move generation.
+ * <p>
+ * The search is either plain alpha-beta or principal variation search, see {@link SearchOptions}. At the horizon
+ * a quiescence search plays out the capturing jumps and base entries, so that the evaluation isn't taken in the
+ * middle of a capture exchange.
+ * <p>
+ * With more than one thread the agent runs a Lazy SMP search: the calling thread runs the main {@link Searcher}
+ * and owns the result, while helper searchers run the same search on other threads and share the lock-free
+ * transposition table with it. The helpers are stopped as soon as the main searcher is done. Alternatively the
+ * tree can be split between the threads with a {@link YoungBrothersSearch}.
+ * <p>
+ * The agent can also search while the opponent thinks, see {@link SearchOptions.Ponder}. The ponder search runs on
+ * a background thread with no deadline. When the real position arrives, the ponder search is either given the
+ * real deadline, if it searched that very position, or stopped by moving its deadline to the past. The deadlines
+ * are kept by a {@link TimeManager}.
+ * <p>
+ * In the first positions of the game the agent can play from an {@link OpeningBook} without searching, and the
+ * search can look up endgames of a pod against a pod in a {@link Tablebase}.
+ * <p>
+ * The transposition table and the move ordering tables are kept from move to move, the table is aged instead of
+ * cleared. When the position follows from the agent's previous move and the opponent's reply, the previous search
+ * has usually proved it to some depth already, and the iterative deepening starts at that depth.
  * @author Emma Pesjak
  */
-public class StudentAgent extends Agent {
-	private long startTime;
-	private final int BUFFER_TIME = 30; // Some buffer time needed for the recursions to finish before the time limit exceeds.
-	private final int MAX_DEPTH = 5;
+public class StudentAgent extends Agent implements PonderingAgent, TimedAgent {
+	private static final Logger logger = Logger.getLogger(StudentAgent.class.getName());
+	private final int TABLE_SIZE_MB = 16;
+	private final TranspositionTable transpositionTable = new TranspositionTable(TABLE_SIZE_MB);
+	private final SearchOptions options;
+	private final SearchStatistics statistics = new SearchStatistics();
+	private final Searcher[] searchers;
+	private final List<Future<Long>> helperResults = new ArrayList<>();
+	private final AtomicBoolean stop = new AtomicBoolean();
+	private final TimeManager timeManager = new TimeManager();
+	private final OpeningBook openingBook;
+	private final Random random = new Random(); // Chooses between the book moves.
+	private final Set<Long> ponderedPositions = new HashSet<>(); // Replies searched by the last ALL ponder search.
+	private ExecutorService helperThreads;
+	private ExecutorService ponderThread;
+	private YoungBrothersSearch youngBrothersSearch;
+	private Future<Long> ponderResult;
+	private long ponderedPosition; // Hash of the position searched by the last PREDICTED ponder search.
+	private OctiState previousState; // The state after the agent's last move.
+	private int tableColor = -1; // The color the scores in the transposition table are for.
+	private int ponders;
+	private int ponderHits;
+
+	/**
+	 * Creates the agent with the default search options.
+	 */
+	public StudentAgent() {
+		this(new SearchOptions());
+	}
+
+	/**
+	 * Creates the agent and its searchers.
+	 * @param options is the search settings.
+	 */
+	public StudentAgent(SearchOptions options) {
+		this.options = options;
+		Tablebase tablebase = openTablebase(options.getTablebase());
+		openingBook = openOpeningBook(options.getOpeningBook());
+		if (options.getThreads() > 1 && options.getParallelism() == SearchOptions.Parallelism.YBWC) {
+			youngBrothersSearch = new YoungBrothersSearch(options, transpositionTable, tablebase);
+			searchers = new Searcher[0];
+			return;
+		}
+		searchers = new Searcher[options.getThreads()];
+		for (int i = 0; i < searchers.length; i++) {
+			searchers[i] = new Searcher(options, transpositionTable, tablebase, i);
+		}
+	}
+
+	/**
+	 * Opens the opening book. Like the tablebase, a book that can't be used is logged and left out.
+	 * @param path is the path of the book file, or null.
+	 * @return the book, or null.
+	 */
+	private static OpeningBook openOpeningBook(String path) {
+		if (path == null) {
+			return null;
+		}
+		try {
+			return OpeningBook.open(Path.of(path));
+		} catch (IOException | InvalidPathException e) {
+			logger.log(Level.WARNING, "Can't use the opening book " + path + ", playing without it", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Opens the endgame tablebase. A missing or broken file only costs the agent the tablebase, so it is logged and
+	 * the agent plays on without it.
+	 * @param path is the path of the tablebase file, or null.
+	 * @return the tablebase, or null.
+	 */
+	private static Tablebase openTablebase(String path) {
+		if (path == null) {
+			return null;
+		}
+		try {
+			return Tablebase.open(Path.of(path));
+		} catch (IOException | InvalidPathException e) {
+			logger.log(Level.WARNING, "Can't use the tablebase " + path + ", searching without it", e);
+			return null;
+		}
+	}
 
 	/**
 	 * Method for deciding which action the Agent should make next.
@@ -25,234 +140,344 @@ public class StudentAgent extends Agent {
 	 */
 	@Override
 	public OctiAction getNextMove(OctiState octiState) {
-		startTime = System.currentTimeMillis();
-		Node<OctiState, OctiAction> root = Node.root(octiState);
-		OctiAction bestAction = null;
-
-		// Iterative deepening DFS minimax with alpha-beta pruning.
-		for (int depth = 1; depth <= MAX_DEPTH; depth++) {
-			ScoredNode result = minimax(root, depth, Integer.MIN_VALUE, Integer.MAX_VALUE, true);
-
-			// If time is up, break out of the loop and return the best action so far.
-			if (System.currentTimeMillis() - startTime + BUFFER_TIME > this.timeLimit) {
-				break;
+		long startNanos = System.nanoTime();
+		CompactState root = new CompactState(octiState);
+		int us = Zobrist.color(player.getColor());
+
+		long bestMove;
+		long bookMove = openingBook != null ? openingBook.probe(root, random) : Move.NONE;
+		if (bookMove != Move.NONE) {
+			stopPondering();
+			bestMove = bookMove;
+			statistics.clear();
+			statistics.bookMove = true;
+			statistics.elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+		} else if (ponderResult != null && options.getPonder() == SearchOptions.Ponder.PREDICTED
+				&& root.hash() == ponderedPosition) {
+
+			// Ponder hit, the running ponder search becomes the search for this move.
+			ponderHits++;
+			timeManager.start(startNanos, timeLimit);
+			bestMove = waitForPondering();
+		} else {
+			if (ponderResult != null) {
+				stopPondering();
+				if (ponderedPositions.contains(root.hash())) {
+					ponderHits++;
+				}
 			}
-			bestAction = result.action;
+			newSearch(us);
+			int startDepth = isDescendant(octiState, root) ? provenDepth(root) : 1;
+			timeManager.start(startNanos, timeLimit);
+			bestMove = search(root, us, startNanos, startDepth, options.getMaxDepth());
 		}
-		return bestAction;
+		if (bestMove == Move.NONE) {
+			bestMove = hashMove(root);
+		}
+		OctiAction action = toAction(bestMove, octiState);
+		previousState = octiState.performAction(action);
+		timeManager.finish(System.nanoTime());
+		return action;
 	}
 
 	/**
-	 * Conducts an iterative deepening minimax search with alpha-beta pruning to find the best move.
-	 * @param parentNode is the parent node.
-	 * @param depth is the current depth of the search.
-	 * @param alpha is the alpha value for alpha-beta pruning.
-	 * @param beta is the beta value for alpha-beta pruning.
-	 * @param isMaximizingPlayer is a boolean stating whether it is currently min or max.
-	 * @return a ScoredNode containing the score and the best OctiAction.
+	 * Feeds the time the client needed for the whole turn back to the time manager.
+	 * @param turnNanos is the time from receiving the state to having sent the action.
 	 */
-	private ScoredNode minimax(Node<OctiState, OctiAction> parentNode, int depth, int alpha, int beta, boolean isMaximizingPlayer) {
-		OctiAction bestAction = null;
-		int bestScore;
-
-		// Check if the recursive search needs to be terminated because of state/depth/time limit.
-		if (parentNode.state.isTerminal() || depth == 0 || System.currentTimeMillis() - startTime + BUFFER_TIME > this.timeLimit) {
-			return new ScoredNode(evaluate(parentNode, isMaximizingPlayer), null);
+	@Override
+	public void turnCompleted(long turnNanos) {
+		if (timeManager.recordTurn(turnNanos)) {
+			logger.log(Level.WARNING, "The turn took " + turnNanos / 1000000 + " ms, the time limit is " + timeLimit + " ms");
 		}
+	}
 
-		// Check for winning move for maximizing player, if so, return early.
-		if (isMaximizingPlayer && Objects.equals(parentNode.state.hasWinner(), player.getColor())) {
-			return new ScoredNode(100000000, parentNode.action);
+	/**
+	 * Starts searching on the opponent's time, as set by the ponder option.
+	 * @param octiState is the game state after the agent's move, with the opponent to move.
+	 */
+	@Override
+	public void startPondering(OctiState octiState) {
+		stopPondering();
+		CompactState position = new CompactState(octiState);
+		if (options.getPonder() == SearchOptions.Ponder.OFF || position.winner() != CompactState.NO_WINNER) {
+			return;
 		}
-
-		// Check for winning move for minimizing player, if so, return early.
-		if (!isMaximizingPlayer && Objects.equals(parentNode.state.hasWinner(), oppPlayer.getColor())) {
-			return new ScoredNode(-100000000, parentNode.action);
+		int us = Zobrist.color(player.getColor());
+		long startNanos = System.nanoTime();
+		timeManager.startInfinite(startNanos);
+		ponderedPositions.clear();
+		newSearch(us);
+
+		if (options.getPonder() == SearchOptions.Ponder.ALL) {
+			ponderResult = ponderThread().submit(() -> ponderAll(position, us, startNanos));
+			ponders++;
+			return;
 		}
 
-		List<Node<OctiState, OctiAction>> childNodes = generateChildNodes(parentNode); // Generate all nodes.
-		orderNodes(childNodes, isMaximizingPlayer); // Move ordering, explore better branches first.
-
-		if (isMaximizingPlayer) {
-			bestScore = Integer.MIN_VALUE;
-
-			// Iterate over the children, recursively calling the minimax on them.
-			for (Node<OctiState, OctiAction> childNode : childNodes) {
-
-				// Check if the time limit is close.
-				long elapsedTime = System.currentTimeMillis() - startTime;
-				if (elapsedTime + BUFFER_TIME > this.timeLimit) {
-					return new ScoredNode(bestScore, bestAction);
-				}
-
-				// Return early if we have a winner.
-				if (Objects.equals(childNode.state.hasWinner(), player.getColor())) {
-					return new ScoredNode(100000000, childNode.action);
-				}
+		// The predicted reply is the best move the last search stored for the position.
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		if (!transpositionTable.probe(position.hash(), entry) || !position.isLegal(entry.move)) {
+			return;
+		}
+		position.play(entry.move);
+		if (position.winner() != CompactState.NO_WINNER) {
+			return;
+		}
+		ponderedPosition = position.hash();
+		int startDepth = provenDepth(position);
+		ponderResult = ponderThread().submit(() -> search(position, us, startNanos, startDepth, options.getMaxDepth()));
+		ponders++;
+	}
 
-				ScoredNode scoredNode = minimax(childNode, depth - 1, alpha, beta, false);
-				if (scoredNode.score > bestScore) {
-					bestScore = scoredNode.score;
-					bestAction = childNode.action;
-				}
+	/**
+	 * Stops a running ponder search and waits for it to return.
+	 */
+	@Override
+	public void stopPondering() {
+		if (ponderResult != null) {
+			timeManager.stopNow();
+			waitForPondering();
+		}
+	}
 
-				// Update the alpha and check if we can break.
-				alpha = Math.max(alpha, bestScore);
-				if (beta <= alpha) {
-					break;
-				}
-			}
-		} else {
-			bestScore = Integer.MAX_VALUE;
+	/**
+	 * Describes how often the opponent played into a pondered position.
+	 * @return the number of ponder searches and ponder hits.
+	 */
+	@Override
+	public String getPonderReport() {
+		return "ponder hits " + ponderHits + " of " + ponders
+				+ (ponders > 0 ? " (" + ponderHits * 100 / ponders + "%)" : "");
+	}
 
-			// Iterate over the children, recursively calling the minimax on them.
-			for (Node<OctiState, OctiAction> childNode : childNodes) {
-				long elapsedTime = System.currentTimeMillis() - startTime;
+	/**
+	 * Runs the search with the configured parallelism and collects the statistics.
+	 * @param root is the position to search.
+	 * @param us is the color the search maximizes for.
+	 * @param startNanos is when the search started, from System.nanoTime().
+	 * @param startDepth is the depth of the first iteration.
+	 * @param maxDepth is the depth of the last iteration.
+	 * @return the best move of the deepest completed iteration, or Move.NONE if none completed.
+	 */
+	private long search(CompactState root, int us, long startNanos, int startDepth, int maxDepth) {
+		stop.set(false);
+		if (youngBrothersSearch != null) {
+			long bestMove = youngBrothersSearch.search(root, us, startNanos, startDepth, maxDepth, timeManager, stop);
+			statistics.clear();
+			statistics.add(youngBrothersSearch.getStatistics(), true);
+			return bestMove;
+		}
 
-				// Check if the time limit is close.
-				if (elapsedTime + BUFFER_TIME > this.timeLimit) {
-					return new ScoredNode(bestScore, bestAction);
-				}
+		// Start the helpers, then search on this thread. The helpers are stopped when the main search is done.
+		for (int i = 1; i < searchers.length; i++) {
+			Searcher helper = searchers[i];
+			helperResults.add(helperThreads().submit(() -> helper.search(root, us, startNanos, startDepth, maxDepth, timeManager, stop)));
+		}
+		long bestMove = searchers[0].search(root, us, startNanos, startDepth, maxDepth, timeManager, stop);
+		stop.set(true);
+		waitForHelpers();
 
-				// Return early if we have a winner.
-				if ( Objects.equals(childNode.state.hasWinner(), oppPlayer.getColor())) {
-					return new ScoredNode(-100000000, childNode.action);
-				}
+		statistics.clear();
+		for (int i = 0; i < searchers.length; i++) {
+			statistics.add(searchers[i].getStatistics(), i == 0);
+		}
+		return bestMove;
+	}
 
-				ScoredNode scoredNode = minimax(childNode, depth - 1, alpha, beta, true);
-				if (scoredNode.score < bestScore) {
-					bestScore = scoredNode.score;
-					bestAction = childNode.action;
+	/**
+	 * Searches the position after every opponent reply, one depth at a time for all of them, until pondering is
+	 * stopped. The replies are tried in move ordering order, so the likely ones are searched first. Each search is a
+	 * single iteration, the shallower ones are in the transposition table from the previous round. The searches
+	 * share the killers and the history, which startPondering aged once for the whole session.
+	 * @param position is the position after the agent's move.
+	 * @param us is the agent's color.
+	 * @param startNanos is when pondering started, from System.nanoTime().
+	 * @return Move.NONE, the ponder search only fills the transposition table.
+	 */
+	private long ponderAll(CompactState position, int us, long startNanos) {
+		MoveList replies = new MoveList();
+		MovePicker picker = new MovePicker(0);
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		long hashMove = transpositionTable.probe(position.hash(), entry) ? entry.move : Move.NONE;
+		picker.init(position, hashMove, new MoveHistory(1), 0, Move.NONE);
+		for (long move = picker.next(); move != Move.NONE; move = picker.next()) {
+			replies.add(move);
+		}
+		for (int depth = 1; depth <= options.getMaxDepth(); depth++) {
+			for (int i = 0; i < replies.size(); i++) {
+				if (timeManager.isTimeUp()) {
+					return Move.NONE;
 				}
-
-				// Update the beta and check if we can break.
-				beta = Math.min(beta, bestScore);
-				if (beta <= alpha) {
-					break;
+				position.play(replies.get(i));
+				if (position.winner() == CompactState.NO_WINNER) {
+					search(position, us, startNanos, depth, depth);
+					if (statistics.completedDepth > 0) {
+						ponderedPositions.add(position.hash());
+					}
 				}
+				position.undo();
 			}
 		}
-		return new ScoredNode(bestScore, bestAction);
+		return Move.NONE;
 	}
 
 	/**
-	 * A very basic move ordering method for sorting the nodes according to the amount of pods.
-	 * @param childNodes is a list of the nodes to be sorted.
-	 * @param isMaximizingPlayer is a boolean stating whether the list should be sorted for min or max.
+	 * Starts a new generation of the transposition table and ages the move ordering tables, once for a move or a
+	 * ponder session however many searches it runs. The scores in the table are for the agent's color, so it is
+	 * emptied if the agent plays the other color now.
+	 * @param us is the agent's color.
 	 */
-	private void orderNodes(List<Node<OctiState, OctiAction>> childNodes, boolean isMaximizingPlayer) {
-		childNodes.sort(Comparator.comparingInt(node -> opponentPods(node, isMaximizingPlayer)));
+	private void newSearch(int us) {
+		if (us != tableColor) {
+			transpositionTable.clear();
+			tableColor = us;
+		}
+		transpositionTable.newSearch();
+		for (Searcher searcher : searchers) {
+			searcher.ageHistory();
+		}
+		if (youngBrothersSearch != null) {
+			youngBrothersSearch.ageHistory();
+		}
 	}
 
 	/**
-	 * Returns the number of pods belonging to the player/opponent player based on the game state
-	 * and whether it is for min or max.
-	 * @param node is the node representing the game state.
-	 * @param isMaximizingPlayer is a boolean stating whether it is for min or max.
-	 * @return the number of pods.
+	 * Checks whether a position follows from the agent's previous move by the opponent's latest move.
+	 * @param octiState is the current game state.
+	 * @param root is the compact copy of the state.
+	 * @return true if the opponent's latest move leads from the state after the agent's previous move to the
+	 * current state.
 	 */
-	private int opponentPods(Node<OctiState, OctiAction> node, boolean isMaximizingPlayer) {
-		return isMaximizingPlayer
-				? node.state.getBoard().getPodsForPlayer(oppPlayer.getColor()).size()
-				: node.state.getBoard().getPodsForPlayer(player.getColor()).size();
+	private boolean isDescendant(OctiState octiState, CompactState root) {
+		OctiAction reply = octiState.getLatestGameAction();
+		if (previousState == null || reply == null || previousState.getBoard().getPositionFromPod(reply.getPod()) == null) {
+			return false;
+		}
+		CompactState position = new CompactState(previousState);
+		long move = Move.of(reply, previousState);
+		if (!position.isLegal(move)) {
+			return false;
+		}
+		position.play(move);
+		return position.hash() == root.hash();
 	}
 
 	/**
-	 * Evaluation function used by the minimax search. The evaluation includes considerations for winning
-	 * or losing states, the number of player's pods, distance to the goal, and potential jump bonuses.
-	 * @param node is the node representing the game state.
-	 * @param isMaximizingPlayer is a boolean stating whether it is for min or max.
-	 * @return the evaluation score for the given game state.
+	 * Finds the depth a position was searched to with an exact score, by the previous search, a ponder search or
+	 * this search.
+	 * @param position is the position.
+	 * @return the depth, at least 1 and at most the maximum depth.
 	 */
-	private int evaluate(Node<OctiState, OctiAction> node, boolean isMaximizingPlayer) {
-		int score = 0;
-
-		// Evaluate based on winning or losing states. Return directly to save time.
-		if (Objects.equals(node.state.hasWinner(), player.getColor())) {
-			return  100000000;
-		} else if (Objects.equals(node.state.hasWinner(), oppPlayer.getColor())) {
-			return -100000000;
+	private int provenDepth(CompactState position) {
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		if (transpositionTable.probe(position.hash(), entry) && entry.bound == TranspositionTable.EXACT) {
+			return Math.max(1, Math.min(entry.depth, options.getMaxDepth()));
 		}
+		return 1;
+	}
 
-		// Evaluate based on the number of player's pods.
-		score += node.state.getBoard().getPodsForPlayer(player.getColor()).size() * 500;
-		score -= node.state.getBoard().getPodsForPlayer(oppPlayer.getColor()).size() * 500;
-
-		// Evaluate based on the distance to the goal.
-		score += isMaximizingPlayer
-				? evaluateDistanceToGoal(node.state, player.getColor())
-				: -evaluateDistanceToGoal(node.state, oppPlayer.getColor());
-
-		// Add a bonus if the action is a jumping action.
-		if (node.action instanceof JumpAction) {
-			if (isMaximizingPlayer) {
-				score += 10000;
-			} else {
-				score -= 10000;
-			}
+	/**
+	 * Waits for the ponder search to return.
+	 * @return the best move of the ponder search, or Move.NONE if it failed or found none.
+	 */
+	private long waitForPondering() {
+		try {
+			return ponderResult.get();
+		} catch (ExecutionException e) {
+			logger.log(Level.SEVERE, "The ponder search failed", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			ponderResult = null;
 		}
-		return score;
+		return Move.NONE;
 	}
 
 	/**
-	 * Evaluates the distance to the goal for pods of the specified color on the given OctiState.
-	 * The distance is calculated based on the Manhattan distance from each pod's position to the goal positions.
-	 * @param state is the OctiState representing the game state.
-	 * @param playerColor is the color of the pods for which the distance to the goal is being evaluated.
-	 * @return the distance score based on the Manhattan distance to the goal for the specified color.
+	 * Finds the move the transposition table holds for a position. It is the fallback when the search returns no move:
+	 * a search that starts at the proven depth, or a ponder search that failed, can run out of time before it
+	 * completes an iteration. Aborted iterations don't store anything, so the root's entry is still the one of the
+	 * deepest search that completed, by this move's search, a ponder search or the previous move's search.
+	 * @param root is the position.
+	 * @return the stored move if it is legal in the position, otherwise Move.NONE.
 	 */
-	private int evaluateDistanceToGoal(OctiState state, String playerColor) {
-		int distanceScore = 0;
-		Point[] goalBase;
+	private long hashMove(CompactState root) {
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		if (transpositionTable.probe(root.hash(), entry) && entry.move != Move.NONE && root.isLegal(entry.move)) {
+			return entry.move;
+		}
+		return Move.NONE;
+	}
 
-		// Get goal positions based on the playerColor.
-		goalBase = playerColor.equals("red") ? state.getBlackBase() : state.getRedBase();
+	/**
+	 * Converts the search result to an action.
+	 * @param bestMove is the best move found, or Move.NONE.
+	 * @param octiState is the current game state.
+	 * @return the action.
+	 */
+	private static OctiAction toAction(long bestMove, OctiState octiState) {
 
-		// Iterate through each pod on the board.
-		for (Pod pod : state.getBoard().getPodsForPlayer(playerColor)) {
-			Point podPosition = state.getBoard().getPositionFromPod(pod);
+		// Without a searched or stored move, fall back on the first legal move.
+		if (bestMove == Move.NONE) {
+			return octiState.getLegalActions().get(0);
+		}
+		return CompactState.toAction(bestMove, octiState);
+	}
 
-			// Calculate the Manhattan distance to the goal.
-			int distance = calculateDistanceToGoal(podPosition, goalBase);
+	/**
+	 * Returns the counters of the latest search. Node counts are summed over all threads, depths and times are the
+	 * ones of the main searcher.
+	 * @return the statistics, overwritten by the next search.
+	 */
+	SearchStatistics getStatistics() {
+		return statistics;
+	}
 
-			// Calculate a score.
-			distanceScore += (10 - distance) * 10000;
+	/**
+	 * Waits for the helper searches to return, so that none of them is still running when the next search starts.
+	 * A failing helper only costs its help, the main searcher's move is still played.
+	 */
+	private void waitForHelpers() {
+		for (Future<Long> result : helperResults) {
+			try {
+				result.get();
+			} catch (ExecutionException e) {
+				logger.log(Level.SEVERE, "A helper search failed", e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 		}
-		return distanceScore;
+		helperResults.clear();
 	}
 
 	/**
-	 * Calculates the minimum Manhattan distance from the given pod position to the goal positions.
-	 * @param podPosition is the position of the pod for which the distance to the goal is being calculated.
-	 * @param goalBase is the array of goal positions.
-	 * @return the minimum Manhattan distance from the pod position to the goal positions.
+	 * Creates the helper threads on first use. They are daemon threads so that they don't keep the client running
+	 * after the game.
+	 * @return the executor running the helper searches.
 	 */
-	private int calculateDistanceToGoal(Point podPosition, Point[] goalBase) {
-		int minDistance = Integer.MAX_VALUE;
-
-		// Iterate through goal positions and find the minimum distance.
-		for (Point goalPosition : goalBase) {
-			int distance = Math.abs(podPosition.x() - goalPosition.x()) + Math.abs(podPosition.y() - goalPosition.y());
-			minDistance = Math.min(minDistance, distance);
+	private ExecutorService helperThreads() {
+		if (helperThreads == null) {
+			helperThreads = Executors.newFixedThreadPool(searchers.length - 1, runnable -> {
+				Thread thread = new Thread(runnable, "search-helper");
+				thread.setDaemon(true);
+				return thread;
+			});
 		}
-		return minDistance;
+		return helperThreads;
 	}
 
 	/**
-	 * Represents a scored action, including the score and the associated OctiAction.
+	 * Creates the ponder thread on first use, a daemon thread like the helper threads.
+	 * @return the executor running the ponder searches.
 	 */
-	private static class ScoredNode {
-		int score;
-		OctiAction action;
-
-		/**
-		 * Constructs a ScoredAction with the given score and OctiAction.
-		 * @param score  The score of the action.
-		 * @param action The OctiAction associated with the score.
-		 */
-		ScoredNode(int score, OctiAction action) {
-			this.score = score;
-			this.action = action;
+	private ExecutorService ponderThread() {
+		if (ponderThread == null) {
+			ponderThread = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "search-ponder");
+				thread.setDaemon(true);
+				return thread;
+			});
 		}
+		return ponderThread;
 	}
 }
@@ -0,0 +1,118 @@
+package se.miun.dt175g.octi.client;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Tablebase holds the exact result of every endgame with a single pod per side, as computed by
+ * {@link TablebaseGenerator}. The file is memory mapped, so only the pages the search probes are read from disk.
+ * <p>
+ * A position is covered when each side has one pod and neither side can place a prong, either because its prongs
+ * left counter is 0 or because its pod already has all eight prongs. Moves from a covered position only lead to
+ * covered positions or to the end of the game, so the table is complete in itself.
+ * <p>
+ * The file starts with a header of HEADER_BYTES bytes, followed by one byte per position. The index of a position is
+ * {@code (((side * 42 + red) * 41 + black') * 256 + redMask) * 256 + blackMask}, where black' is the black pod's square
+ * with the red pod's square left out, so every index is a possible placement of the pods. A byte is UNKNOWN for a
+ * position neither side can force a win from, INVALID for a position that can't occur in a game, and otherwise the
+ * number of plies to the end of the game plus one. The side to move wins when the number of plies is odd.
+ */
+final class Tablebase {
+	static final int NOT_FOUND = -1; // The position isn't covered by the table.
+	static final int DRAW = -2; // Neither side can force a win.
+	static final int UNKNOWN = 0;
+	static final int INVALID = 255;
+	static final int MAX_DISTANCE = 253;
+	static final long MAGIC = 0x4F6374695442L; // "OctiTB"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 64;
+	static final int POSITIONS = 2 * Move.SQUARES * (Move.SQUARES - 1) * 256 * 256;
+
+	// Header fields, as byte offsets.
+	static final int MAGIC_OFFSET = 0;
+	static final int VERSION_OFFSET = 8;
+	static final int RED_BASE_OFFSET = 16;
+	static final int BLACK_BASE_OFFSET = 24;
+	static final int DISTANCE_OFFSET = 32; // The last distance whose pass is finished, -1 before the first pass.
+	static final int FOUND_OFFSET = 40; // How many positions the last finished pass found.
+	static final int COMPLETE_OFFSET = 48; // 1 when every pass is done.
+
+	private final MappedByteBuffer data;
+	private final long redBase;
+	private final long blackBase;
+
+	private Tablebase(MappedByteBuffer data) {
+		this.data = data;
+		redBase = data.getLong(RED_BASE_OFFSET);
+		blackBase = data.getLong(BLACK_BASE_OFFSET);
+	}
+
+	/**
+	 * Maps a finished tablebase file.
+	 * @param path is the file written by TablebaseGenerator.
+	 * @return the tablebase.
+	 * @throws IOException if the file can't be read or isn't a finished tablebase.
+	 */
+	static Tablebase open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() != (long) HEADER_BYTES + POSITIONS) {
+				throw new IOException(path + " is not a tablebase file");
+			}
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (data.getLong(MAGIC_OFFSET) != MAGIC || data.getInt(VERSION_OFFSET) != VERSION) {
+				throw new IOException(path + " is not a tablebase file");
+			}
+			if (data.getInt(COMPLETE_OFFSET) != 1) {
+				throw new IOException(path + " is not finished, run TablebaseGenerator on it again");
+			}
+			return new Tablebase(data);
+		}
+	}
+
+	/**
+	 * Calculates the index of a position.
+	 * @param side is the side to move.
+	 * @param red is the square of the red pod.
+	 * @param black is the square of the black pod, different from red.
+	 * @param redMask is the prong mask of the red pod.
+	 * @param blackMask is the prong mask of the black pod.
+	 * @return the index, from 0 to POSITIONS - 1.
+	 */
+	static int index(int side, int red, int black, int redMask, int blackMask) {
+		int blackIndex = black > red ? black - 1 : black;
+		return (((side * Move.SQUARES + red) * (Move.SQUARES - 1) + blackIndex) * 256 + redMask) * 256 + blackMask;
+	}
+
+	/**
+	 * Checks whether a side can't place prongs in a position.
+	 * @param state is the position.
+	 * @param color is the side, with a single pod.
+	 * @return true if the side has no prongs left or its pod has all of them.
+	 */
+	static boolean cannotPlace(CompactState state, int color) {
+		return state.prongsLeft(color) == 0 || state.prongMask(Long.numberOfTrailingZeros(state.pods(color))) == 0xFF;
+	}
+
+	/**
+	 * Looks up a position.
+	 * @param state is the position.
+	 * @return the number of plies to the end of the game, which the side to move wins if it is odd, DRAW if neither
+	 * side can force a win, or NOT_FOUND if the position isn't covered.
+	 */
+	int probe(CompactState state) {
+		if (state.podCount(CompactState.RED) != 1 || state.podCount(CompactState.BLACK) != 1
+				|| !cannotPlace(state, CompactState.RED) || !cannotPlace(state, CompactState.BLACK)
+				|| state.base(CompactState.RED) != redBase || state.base(CompactState.BLACK) != blackBase) {
+			return NOT_FOUND;
+		}
+		int red = Long.numberOfTrailingZeros(state.pods(CompactState.RED));
+		int black = Long.numberOfTrailingZeros(state.pods(CompactState.BLACK));
+		int value = data.get(HEADER_BYTES + index(state.sideToMove(), red, black, state.prongMask(red),
+				state.prongMask(black))) & 0xFF;
+		return value == UNKNOWN ? DRAW : value == INVALID ? NOT_FOUND : value - 1;
+	}
+}
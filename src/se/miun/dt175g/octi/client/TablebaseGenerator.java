@@ -0,0 +1,381 @@
+package se.miun.dt175g.octi.client;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import se.miun.dt175g.octi.core.*;
+
+
+/**
+ * The TablebaseGenerator class writes the {@link Tablebase} file by retrograde analysis, from the end of the game
+ * backwards:
+ * <ol>
+ * <li>The first pass looks at every position and marks the ones that are already over, a loss for the side to
+ * move, and the ones the side to move wins with its next move, by entering the base or capturing the other pod.
+ * A game that ends with a capture has no position to take the move back from, so those wins are only found here.</li>
+ * <li>Pass n then finds the positions at distance n, starting from those at distance n - 1 and taking their moves
+ * back. For odd n each predecessor that isn't decided yet is won, it has a move to a lost position. For even n a
+ * predecessor is lost if every one of its moves leads to a position the opponent wins in fewer than n plies.</li>
+ * <li>When two passes in a row find nothing, every position left is a draw.</li>
+ * </ol>
+ * The file is mapped into memory and the passes write to it directly. Each pass splits the positions into chunks that
+ * the threads take one at a time. Positions are only ever changed from undecided to the distance of the running
+ * pass, so threads that race on a position write the same value.
+ * <p>
+ * The header records the last finished pass, and every pass is forced to disk before it is recorded. An interrupted
+ * run is resumed by starting the generator again on the same file, which repeats the unfinished pass.
+ * <p>
+ * Usage: {@code TablebaseGenerator <file> [threads]}, the default is one thread per available processor. The file
+ * takes 216 MB.
+ */
+public class TablebaseGenerator {
+	private static final int CHUNK = 1 << 20;
+
+	private final MappedByteBuffer data;
+	private final int threads;
+	private final long[] bases = new long[2];
+
+	/**
+	 * Creates a generator.
+	 * @param data is the whole mapped file, header included.
+	 * @param threads is the number of threads.
+	 */
+	TablebaseGenerator(MappedByteBuffer data, int threads) {
+		this.data = data;
+		this.threads = threads;
+		CompactState start = new CompactState(OctiState.createBasicMode());
+		bases[CompactState.RED] = start.base(CompactState.RED);
+		bases[CompactState.BLACK] = start.base(CompactState.BLACK);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		if (args.length < 1) {
+			System.err.println("Usage: TablebaseGenerator <file> [threads]");
+			return;
+		}
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		try (FileChannel channel = FileChannel.open(Path.of(args[0]), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+					(long) Tablebase.HEADER_BYTES + Tablebase.POSITIONS);
+			new TablebaseGenerator(data, threads).generate();
+		}
+	}
+
+	/**
+	 * Runs the passes that are left, starting a new table if the file doesn't hold one.
+	 * @throws InterruptedException if the generator is interrupted.
+	 * @throws ExecutionException if a pass fails.
+	 */
+	void generate() throws InterruptedException, ExecutionException {
+		if (data.getLong(Tablebase.MAGIC_OFFSET) != Tablebase.MAGIC || data.getInt(Tablebase.VERSION_OFFSET) != Tablebase.VERSION) {
+			data.putLong(Tablebase.MAGIC_OFFSET, Tablebase.MAGIC);
+			data.putInt(Tablebase.VERSION_OFFSET, Tablebase.VERSION);
+			data.putLong(Tablebase.RED_BASE_OFFSET, bases[CompactState.RED]);
+			data.putLong(Tablebase.BLACK_BASE_OFFSET, bases[CompactState.BLACK]);
+			data.putInt(Tablebase.DISTANCE_OFFSET, -1);
+			data.putLong(Tablebase.FOUND_OFFSET, 0);
+			data.putInt(Tablebase.COMPLETE_OFFSET, 0);
+			data.force();
+		}
+		if (data.getInt(Tablebase.COMPLETE_OFFSET) == 1) {
+			System.out.println("The tablebase is already complete");
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			int distance = data.getInt(Tablebase.DISTANCE_OFFSET);
+			long previousFound = data.getLong(Tablebase.FOUND_OFFSET);
+			if (distance < 0) {
+				long startNanos = System.nanoTime();
+				previousFound = run(executor, this::initialize);
+				distance = 0;
+				finishPass(distance, previousFound, startNanos);
+			} else {
+				System.out.println("Resuming after distance " + distance);
+			}
+			while (distance < Tablebase.MAX_DISTANCE) {
+				long startNanos = System.nanoTime();
+				int next = distance + 1;
+				long found = run(executor, (start, end) -> retract(start, end, next));
+				distance = next;
+				finishPass(distance, found, startNanos);
+				if (found == 0 && previousFound == 0) {
+					break;
+				}
+				previousFound = found;
+			}
+			data.putInt(Tablebase.COMPLETE_OFFSET, 1);
+			data.force();
+			printSummary();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Forces a finished pass to disk and records it in the header.
+	 * @param distance is the distance of the pass.
+	 * @param found is the number of positions the pass decided.
+	 * @param startNanos is when the pass started, from System.nanoTime().
+	 */
+	private void finishPass(int distance, long found, long startNanos) {
+		data.force();
+		data.putInt(Tablebase.DISTANCE_OFFSET, distance);
+		data.putLong(Tablebase.FOUND_OFFSET, found);
+		data.force();
+		System.out.println("Distance " + distance + ": " + found + " positions, "
+				+ (System.nanoTime() - startNanos) / 1000000 + " ms");
+	}
+
+	/**
+	 * A pass over a range of positions.
+	 */
+	private interface Pass {
+		/**
+		 * Processes the positions from start to end.
+		 * @param start is the first index.
+		 * @param end is the index after the last one.
+		 * @return the number of positions decided.
+		 */
+		long run(int start, int end);
+	}
+
+	/**
+	 * Runs a pass over every position, the threads take chunks of positions until none are left.
+	 * @param executor is the thread pool.
+	 * @param pass is the pass.
+	 * @return the number of positions decided.
+	 * @throws InterruptedException if the generator is interrupted.
+	 * @throws ExecutionException if the pass fails.
+	 */
+	private long run(ExecutorService executor, Pass pass) throws InterruptedException, ExecutionException {
+		AtomicInteger nextChunk = new AtomicInteger();
+		List<Callable<Long>> workers = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			workers.add(() -> {
+				long found = 0;
+				for (int start = nextChunk.getAndIncrement() * CHUNK; start < Tablebase.POSITIONS;
+						start = nextChunk.getAndIncrement() * CHUNK) {
+					found += pass.run(start, Math.min(Tablebase.POSITIONS, start + CHUNK));
+				}
+				return found;
+			});
+		}
+		long found = 0;
+		for (Future<Long> result : executor.invokeAll(workers)) {
+			found += result.get();
+		}
+		return found;
+	}
+
+	/**
+	 * The first pass, marks the invalid positions, the finished games and the wins by capture or base entry.
+	 * @param start is the first index.
+	 * @param end is the index after the last one.
+	 * @return the number of positions decided.
+	 */
+	private long initialize(int start, int end) {
+		long found = 0;
+		int[] position = new int[5];
+		for (int index = start; index < end; index++) {
+			decode(index, position);
+			int value = initialValue(position);
+			set(index, value);
+			if (value != Tablebase.UNKNOWN && value != Tablebase.INVALID) {
+				found++;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Decides a position without looking at other positions.
+	 * @param position is the decoded position.
+	 * @return the value of the position, UNKNOWN if it takes other positions to decide it.
+	 */
+	private int initialValue(int[] position) {
+		int side = position[0];
+		int other = 1 - side;
+		int square = position[1 + side];
+		int otherSquare = position[1 + other];
+
+		// The side to move can't have a pod on the other side's base, that would have ended the game already.
+		if ((bases[other] & 1L << square) != 0) {
+			return Tablebase.INVALID;
+		}
+		if ((bases[side] & 1L << otherSquare) != 0) {
+			return 1;
+		}
+
+		boolean black = side == CompactState.BLACK;
+		boolean canMove = false;
+		int mask = position[3 + side];
+		for (int direction = 0; direction < 8; direction++) {
+			if ((mask & 1 << direction) == 0) {
+				continue;
+			}
+			int to = Move.step(square, direction, black);
+			if (to < 0) {
+				continue;
+			}
+			if (to == otherSquare) {
+				int landing = Move.step(to, direction, black);
+				if (landing >= 0) {
+					return 2; // Capturing the last pod wins.
+				}
+				continue;
+			}
+			if ((bases[other] & 1L << to) != 0) {
+				return 2;
+			}
+			canMove = true;
+		}
+		return canMove ? Tablebase.UNKNOWN : 1;
+	}
+
+	/**
+	 * A pass that takes back the moves into the positions at distance - 1 and decides the predecessors at distance.
+	 * @param start is the first index.
+	 * @param end is the index after the last one.
+	 * @param distance is the distance of the pass.
+	 * @return the number of positions decided.
+	 */
+	private long retract(int start, int end, int distance) {
+		long found = 0;
+		int[] position = new int[5];
+		int[] child = new int[5];
+		for (int index = start; index < end; index++) {
+			if (get(index) != distance) {
+				continue;
+			}
+			decode(index, position);
+
+			// The side that isn't to move made the last move. Its pod came from one step back in a direction it has a
+			// prong in, or from two steps back if it jumped the other pod.
+			int side = position[0];
+			int mover = 1 - side;
+			boolean black = mover == CompactState.BLACK;
+			int to = position[1 + mover];
+			int otherSquare = position[1 + side];
+			int mask = position[3 + mover];
+			for (int direction = 0; direction < 8; direction++) {
+				if ((mask & 1 << direction) == 0) {
+					continue;
+				}
+				int from = Move.step(to, Move.opposite(direction), black);
+				if (from == otherSquare) {
+					from = Move.step(otherSquare, Move.opposite(direction), black);
+				}
+				if (from < 0) {
+					continue;
+				}
+				position[0] = mover;
+				position[1 + mover] = from;
+				int predecessor = encode(position);
+				if (get(predecessor) == Tablebase.UNKNOWN && (distance % 2 == 1 || isLost(position, child, distance))) {
+					set(predecessor, distance + 1);
+					found++;
+				}
+				position[0] = side;
+				position[1 + mover] = to;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Checks whether every move of a position leads to a position the opponent wins in fewer plies than distance.
+	 * @param position is the decoded position.
+	 * @param child is an array to decode the positions after the moves in.
+	 * @param distance is the distance of the pass.
+	 * @return true if the position is lost at distance.
+	 */
+	private boolean isLost(int[] position, int[] child, int distance) {
+		int side = position[0];
+		int other = 1 - side;
+		int square = position[1 + side];
+		int otherSquare = position[1 + other];
+		int mask = position[3 + side];
+		boolean black = side == CompactState.BLACK;
+		System.arraycopy(position, 0, child, 0, position.length);
+		child[0] = other;
+		for (int direction = 0; direction < 8; direction++) {
+			if ((mask & 1 << direction) == 0) {
+				continue;
+			}
+			int to = Move.step(square, direction, black);
+			if (to == otherSquare) {
+				to = Move.step(otherSquare, direction, black);
+			}
+			if (to < 0) {
+				continue;
+			}
+			child[1 + side] = to;
+			int value = get(encode(child));
+			if (value == Tablebase.UNKNOWN || value == Tablebase.INVALID || value % 2 != 0 || value > distance) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Counts the won, lost and drawn positions and prints them.
+	 */
+	private void printSummary() {
+		long won = 0;
+		long lost = 0;
+		long draws = 0;
+		int longest = 0;
+		for (int index = 0; index < Tablebase.POSITIONS; index++) {
+			int value = get(index);
+			if (value == Tablebase.UNKNOWN) {
+				draws++;
+			} else if (value != Tablebase.INVALID) {
+				if (value % 2 == 0) {
+					won++;
+				} else {
+					lost++;
+				}
+				longest = Math.max(longest, value - 1);
+			}
+		}
+		System.out.println("Won " + won + ", lost " + lost + ", drawn " + draws + ", longest win " + longest + " plies");
+	}
+
+	// A decoded position is { side to move, red square, black square, red mask, black mask }.
+	private static void decode(int index, int[] position) {
+		position[4] = index & 255;
+		position[3] = index >>> 8 & 255;
+		int rest = index >>> 16;
+		int blackIndex = rest % (Move.SQUARES - 1);
+		rest /= Move.SQUARES - 1;
+		position[1] = rest % Move.SQUARES;
+		position[0] = rest / Move.SQUARES;
+		position[2] = blackIndex >= position[1] ? blackIndex + 1 : blackIndex;
+	}
+
+	private static int encode(int[] position) {
+		return Tablebase.index(position[0], position[1], position[2], position[3], position[4]);
+	}
+
+	private int get(int index) {
+		return data.get(Tablebase.HEADER_BYTES + index) & 0xFF;
+	}
+
+	private void set(int index, int value) {
+		data.put(Tablebase.HEADER_BYTES + index, (byte) value);
+	}
+}
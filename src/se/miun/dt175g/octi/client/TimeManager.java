@@ -0,0 +1,142 @@
+package se.miun.dt175g.octi.client;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * TimeManager decides when the search of a move has to stop. All times are taken with System.nanoTime().
+ * <ul>
+ * <li>The hard deadline is the time limit minus a safety margin. A search that reaches it is aborted. Searchers
+ * only look at the clock every {@link #POLL_INTERVAL} nodes.</li>
+ * <li>The soft limit is checked between iterations: the next iteration is only started if it is predicted to finish
+ * before the hard deadline. The prediction is the time of the last iteration times the effective branching factor.
+ * The iteration times alternate between odd and even depths like the scores do, so the branching factor is the
+ * ratio of the two iterations before the last one, which made the step of the same parity.</li>
+ * </ul>
+ * The margin covers the time between the hard deadline and the action reaching the server. It adapts to what is
+ * measured: how long an aborted search takes to return after the deadline, and how much longer the whole turn on the
+ * client takes than the agent's getNextMove.
+ */
+final class TimeManager {
+	static final int POLL_INTERVAL = 1024; // Nodes between two looks at the clock, roughly a millisecond.
+	private static final long SAFETY = TimeUnit.MILLISECONDS.toNanos(5);
+	private static final long INFINITE_BUDGET = Long.MAX_VALUE / 4; // Longer time limits are treated as no limit.
+	private static final double DEFAULT_BRANCHING = 8;
+	private static final double MIN_BRANCHING = 1.5;
+	private static final double MAX_BRANCHING = 16;
+
+	private volatile long hardDeadline;
+	private volatile boolean infinite;
+	private long startNanos;
+	private long timeLimitNanos;
+	private long moveNanos; // How long the last getNextMove took.
+	private long abortLatency = TimeUnit.MILLISECONDS.toNanos(10); // Running average, deadline to search returned.
+	private long clientLatency = TimeUnit.MILLISECONDS.toNanos(2); // Running average, turn time not spent in the agent.
+
+	/**
+	 * Sets the deadline of a move. May be called while the search is running, to give a ponder search the real
+	 * deadline.
+	 * @param startNanos is when the agent was asked for the move, from System.nanoTime().
+	 * @param timeLimitMillis is the time the agent has for the move, in milliseconds.
+	 */
+	void start(long startNanos, long timeLimitMillis) {
+		this.startNanos = startNanos;
+		timeLimitNanos = TimeUnit.MILLISECONDS.toNanos(timeLimitMillis);
+		if (timeLimitNanos >= INFINITE_BUDGET) {
+			startInfinite(startNanos);
+			return;
+		}
+		hardDeadline = startNanos + Math.max(0, timeLimitNanos - margin());
+		infinite = false;
+	}
+
+	/**
+	 * Lets the search run until {@link #stopNow()} is called, for pondering and benchmarks.
+	 * @param startNanos is when the search started, from System.nanoTime().
+	 */
+	void startInfinite(long startNanos) {
+		this.startNanos = startNanos;
+		timeLimitNanos = Long.MAX_VALUE;
+		infinite = true;
+	}
+
+	/**
+	 * Moves the hard deadline to the past, every searcher returns at its next look at the clock.
+	 */
+	void stopNow() {
+		hardDeadline = System.nanoTime() - 1;
+		infinite = false;
+	}
+
+	/**
+	 * Checks the hard deadline.
+	 * @return true if the search has to be aborted.
+	 */
+	boolean isTimeUp() {
+		return !infinite && System.nanoTime() - hardDeadline > 0;
+	}
+
+	/**
+	 * Decides whether there is time for another iteration.
+	 * @param iterationNanos is how long each iteration took, indexed by depth.
+	 * @param depth is the depth of the last iteration.
+	 * @param firstDepth is the depth of the first iteration.
+	 * @return true if the next iteration is predicted to finish before the hard deadline.
+	 */
+	boolean canStartIteration(long[] iterationNanos, int depth, int firstDepth) {
+		if (infinite) {
+			return true;
+		}
+		double branching = DEFAULT_BRANCHING;
+		if (depth - 2 >= firstDepth) {
+			branching = (double) iterationNanos[depth - 1] / Math.max(1, iterationNanos[depth - 2]);
+		} else if (depth - 1 >= firstDepth) {
+			branching = (double) iterationNanos[depth] / Math.max(1, iterationNanos[depth - 1]);
+		}
+		branching = Math.max(MIN_BRANCHING, Math.min(MAX_BRANCHING, branching));
+		return iterationNanos[depth] * branching < hardDeadline - System.nanoTime();
+	}
+
+	/**
+	 * Records the end of a move. If the search ran into the hard deadline, the time it took to return after it is a
+	 * sample of the abort latency.
+	 * @param endNanos is when getNextMove returned its action, from System.nanoTime().
+	 */
+	void finish(long endNanos) {
+		moveNanos = endNanos - startNanos;
+		if (!infinite && endNanos - hardDeadline > 0) {
+			abortLatency = average(abortLatency, endNanos - hardDeadline);
+		}
+	}
+
+	/**
+	 * Records how long the whole turn took on the client, including parsing the state and sending the action. The
+	 * part not spent in getNextMove is a sample of the client latency.
+	 * @param turnNanos is the time from receiving the state to having sent the action.
+	 * @return true if the turn took longer than the time limit.
+	 */
+	boolean recordTurn(long turnNanos) {
+		clientLatency = average(clientLatency, Math.max(0, turnNanos - moveNanos));
+
+		// An overrun widens the margin by the whole excess at once, the averages would only take a quarter of it.
+		if (turnNanos > timeLimitNanos) {
+			abortLatency += turnNanos - timeLimitNanos;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the safety margin between the hard deadline and the time limit: twice the average latencies, so that
+	 * a slower than average turn still fits, plus a fixed safety. It is never more than half the time limit.
+	 * @return the margin in nanoseconds.
+	 */
+	private long margin() {
+		return Math.min(timeLimitNanos / 2, SAFETY + 2 * (abortLatency + clientLatency));
+	}
+
+	// An exponential moving average that gives the new sample a weight of one quarter.
+	private static long average(long average, long sample) {
+		return average + (sample - average) / 4;
+	}
+}
@@ -0,0 +1,15 @@
+package se.miun.dt175g.octi.client;
+
+
+/**
+ * A TimedAgent wants to know how long its turns take on the {@link GameClient}, including the parsing of the state
+ * and the sending of the action, so that it can keep a margin for them.
+ */
+public interface TimedAgent {
+
+	/**
+	 * Called after the action of a turn has been sent.
+	 * @param turnNanos is the time from receiving the state to having sent the action, in nanoseconds.
+	 */
+	void turnCompleted(long turnNanos);
+}
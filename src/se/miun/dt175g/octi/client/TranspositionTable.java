@@ -0,0 +1,145 @@
+package se.miun.dt175g.octi.client;
+
+import java.util.Arrays;
+
+
+/**
+ * A fixed-size transposition table for the alpha-beta search. The table is split into buckets of two slots:
+ * the first slot keeps the deepest search of the bucket (depth-preferred) and the second slot always takes
+ * the newest entry that didn't qualify for the first one (always-replace).
+ * <p>
+ * Entries are stored in parallel primitive arrays so that probing and storing never allocates.
+ * <p>
+ * The table is kept for the whole game. Every entry is stamped with the generation of the search that stored it,
+ * and {@link #newSearch()} starts a new generation. Entries of older searches can still be probed, but they give
+ * up the depth-preferred slot to any entry of the current search.
+ * <p>
+ * The table is shared by the threads of a Lazy SMP search without locking. Instead of the key, a slot stores the
+ * key XOR the move XOR the data, so an entry that was torn by two threads writing the same slot at once doesn't
+ * match its key any more and is treated as missing.
+ */
+final class TranspositionTable {
+	static final int EXACT = 0;
+	static final int LOWER = 1; // The score is a lower bound, the search failed high.
+	static final int UPPER = 2; // The score is an upper bound, the search failed low.
+
+	private final long[] keys;
+	private final long[] moves;
+	private final long[] data;
+	private final int bucketMask;
+	private int generation;
+
+	/**
+	 * Creates a table that uses roughly the given amount of memory.
+	 * @param megabytes is the memory budget, rounded down to a power of two number of buckets.
+	 */
+	TranspositionTable(int megabytes) {
+		long slots = Math.max(2, (long) megabytes * 1024 * 1024 / (3 * Long.BYTES));
+		int buckets = Integer.highestOneBit((int) Math.min(slots / 2, 1 << 30));
+		keys = new long[buckets * 2];
+		moves = new long[buckets * 2];
+		data = new long[buckets * 2];
+		bucketMask = buckets - 1;
+	}
+
+	/**
+	 * Looks up a position.
+	 * @param key is the Zobrist hash of the position.
+	 * @param entry is filled with the stored values if the position is found.
+	 * @return true if the position was found.
+	 */
+	boolean probe(long key, Entry entry) {
+		int slot = ((int) key & bucketMask) << 1;
+		for (int i = 0; i < 2; i++, slot++) {
+
+			// Read each array once, the slot may be overwritten by another thread in the meantime.
+			long move = moves[slot];
+			long packed = data[slot];
+			if (packed != 0 && (keys[slot] ^ move ^ packed) == key) {
+				entry.move = move;
+				entry.score = score(packed);
+				entry.depth = depth(packed);
+				entry.bound = bound(packed);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Stores a search result, the deep slot is replaced when the new search is at least as deep or the stored entry
+	 * is from an older search.
+	 * @param key is the Zobrist hash of the position.
+	 * @param depth is the remaining search depth of the result.
+	 * @param bound is one of EXACT, LOWER or UPPER.
+	 * @param score is the score of the position.
+	 * @param move is the best move found, or Move.NONE.
+	 */
+	void store(long key, int depth, int bound, int score, long move) {
+		int slot = ((int) key & bucketMask) << 1;
+		if (storedKey(slot) != key && data[slot] != 0 && depth < depth(data[slot])
+				&& generation(data[slot]) == generation) {
+			slot++;
+		}
+
+		// Keep the old best move if this search didn't find one, it is still the best ordering guess.
+		if (move == Move.NONE && storedKey(slot) == key) {
+			move = moves[slot];
+		}
+		long packed = pack(depth, bound, score, generation);
+		keys[slot] = key ^ move ^ packed;
+		moves[slot] = move;
+		data[slot] = packed;
+	}
+
+	/**
+	 * Starts a new generation, called once per move of the game before the search starts.
+	 */
+	void newSearch() {
+		generation = (generation + 1) & 0xFF;
+	}
+
+	/**
+	 * Empties the table.
+	 */
+	void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(moves, 0);
+		Arrays.fill(data, 0);
+	}
+
+	private long storedKey(int slot) {
+		return keys[slot] ^ moves[slot] ^ data[slot];
+	}
+
+	// The depth is stored off by one so that a used slot never packs to zero.
+	private static long pack(int depth, int bound, int score, int generation) {
+		return (score & 0xFFFFFFFFL) | ((long) (depth + 1) << 32) | ((long) bound << 40) | ((long) generation << 42);
+	}
+
+	private static int score(long data) {
+		return (int) data;
+	}
+
+	private static int depth(long data) {
+		return (int) ((data >>> 32) & 0xFF) - 1;
+	}
+
+	private static int bound(long data) {
+		return (int) (data >>> 40) & 3;
+	}
+
+	private static int generation(long data) {
+		return (int) (data >>> 42) & 0xFF;
+	}
+
+	/**
+	 * A reusable holder for the values of a probed entry.
+	 */
+	static final class Entry {
+		long move;
+		int score;
+		int depth;
+		int bound;
+	}
+}
@@ -0,0 +1,449 @@
+package se.miun.dt175g.octi.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * YoungBrothersSearch is a tree splitting parallel alpha-beta search using the Young Brothers Wait Concept on a
+ * ForkJoinPool. At a split node the eldest brother, the first move in the move ordering, is searched first on the
+ * current thread. Only if it doesn't cause a cutoff are the remaining moves, the young brothers, forked as tasks,
+ * one per pool thread at a time, each with the window the brothers before it left behind.
+ * <p>
+ * When a young brother causes a cutoff its siblings are cancelled. Every task checks its own flag and those of its
+ * ancestors, so the whole stale subtree returns early. Nodes deeper than MAX_SPLIT_PLY or closer to the horizon than
+ * MIN_SPLIT_DEPTH are searched serially by a {@link Searcher} owned by the pool thread, with the same rules as the
+ * serial search, and all threads share the agent's transposition table.
+ * <p>
+ * Split nodes search like the serial search does, except for the null move and futility pruning: the root gets an
+ * aspiration window, young brothers are searched with a null window in PVS mode and with the late move reductions,
+ * and are searched again on the current thread when the result is only a bound. Splitting is limited to the root
+ * because a split node further down lacks the null move, which costs more nodes than the extra parallelism gains.
+ * A split node plays its moves on its own state and only a forked brother gets a copy, without the undo history.
+ */
+final class YoungBrothersSearch {
+	private static final int MIN_SPLIT_DEPTH = 5;
+	private static final int MAX_SPLIT_PLY = 0; // Deeper nodes are searched serially, with every pruning rule.
+
+	private final SearchOptions options;
+	private final TranspositionTable transpositionTable;
+	private final ForkJoinPool pool;
+	private final List<Searcher> searchers = new ArrayList<>(); // Every pool thread's searcher.
+	private final ThreadLocal<Searcher> threadSearcher;
+	private final SearchStatistics statistics = new SearchStatistics();
+	private final AtomicLong splitNodes = new AtomicLong();
+	private final AtomicLong cancelledTasks = new AtomicLong();
+	private int us;
+	private long startNanos;
+	private TimeManager timeManager;
+	private AtomicBoolean stop;
+	private volatile boolean timeUp; // Set once a task stopped for the time or the agent, the iteration is incomplete.
+
+	/**
+	 * Creates the search and its pool.
+	 * @param options is the search settings, the pool gets options.getThreads() threads.
+	 * @param transpositionTable is the table shared by all threads.
+	 * @param tablebase is the endgame tablebase, or null.
+	 */
+	YoungBrothersSearch(SearchOptions options, TranspositionTable transpositionTable, Tablebase tablebase) {
+		this.options = options;
+		this.transpositionTable = transpositionTable;
+		pool = new ForkJoinPool(options.getThreads(), pool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
+		threadSearcher = ThreadLocal.withInitial(() -> {
+			Searcher searcher = new Searcher(options, transpositionTable, tablebase, 0);
+			searcher.prepare(us, startNanos, timeManager, stop);
+			synchronized (searchers) {
+				searchers.add(searcher);
+			}
+			return searcher;
+		});
+	}
+
+	/**
+	 * Runs the iterative deepening search on a position.
+	 * @param root is the position to search.
+	 * @param us is the color the search maximizes for.
+	 * @param startNanos is when the search started, from System.nanoTime().
+	 * @param startDepth is the depth of the first iteration.
+	 * @param maxDepth is the depth of the last iteration.
+	 * @param timeManager is the agent's time manager, the agent may move the deadline while the search runs.
+	 * @param stop is set by the agent to stop the search early.
+	 * @return the best move of the deepest completed iteration, or Move.NONE if none completed.
+	 */
+	long search(CompactState root, int us, long startNanos, int startDepth, int maxDepth, TimeManager timeManager,
+			AtomicBoolean stop) {
+		this.us = us;
+		this.startNanos = startNanos;
+		this.timeManager = timeManager;
+		this.stop = stop;
+		timeUp = false;
+		statistics.clear();
+		splitNodes.set(0);
+		cancelledTasks.set(0);
+
+		// The pool is idle between moves, so the searchers of its threads can be reset from here.
+		synchronized (searchers) {
+			for (Searcher searcher : searchers) {
+				searcher.prepare(us, startNanos, timeManager, stop);
+			}
+		}
+
+		long bestMove = Move.NONE;
+		int[] scores = new int[maxDepth + 1];
+		statistics.startDepth = startDepth;
+		long iterationStart = startNanos;
+		long[] iterationNanos = new long[maxDepth + 1];
+		for (int depth = startDepth; depth <= maxDepth; depth++) {
+			// The window is centred on the iteration with the same parity, like in the serial search.
+			boolean centred = depth - 2 >= startDepth;
+			NodeTask task = aspirationSearch(root, depth, centred, centred ? scores[depth - 2] : 0);
+			int score = task.join();
+			scores[depth] = score;
+
+			// If a task stopped for the time, break out of the loop and return the best action so far. An iteration
+			// that completed before the deadline is kept even if the time is up by now.
+			if (timeUp) {
+				break;
+			}
+			bestMove = task.bestMove;
+			long now = System.nanoTime();
+			statistics.completedDepth = depth;
+			statistics.depthMillis[depth] = (now - startNanos) / 1000000;
+
+			// A proven win or loss won't change with more depth.
+			if (Math.abs(score) >= Searcher.WIN_BOUND) {
+				statistics.provenResult = true;
+				break;
+			}
+
+			// Don't start an iteration that won't finish.
+			iterationNanos[depth] = now - iterationStart;
+			iterationStart = now;
+			if (!timeManager.canStartIteration(iterationNanos, depth, startDepth)) {
+				break;
+			}
+		}
+		statistics.elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+
+		// Collect the counters of the pool threads' searchers and the split nodes.
+		synchronized (searchers) {
+			for (Searcher searcher : searchers) {
+				statistics.add(searcher.getStatistics(), false);
+			}
+		}
+		statistics.nodes += splitNodes.get();
+		statistics.splitNodes = splitNodes.get();
+		statistics.cancelledTasks = cancelledTasks.get();
+		return bestMove;
+	}
+
+	/**
+	 * Searches the root with an aspiration window around the score of an earlier iteration, and widens the window
+	 * on the side the score fell out of until it lands inside.
+	 * @param root is the position to search.
+	 * @param depth is the depth of the iteration.
+	 * @param hasPreviousScore is true if there is a score to centre the window on.
+	 * @param previousScore is the score to centre the window on.
+	 * @return the root task of the last search, which holds the score and the best move.
+	 */
+	private NodeTask aspirationSearch(CompactState root, int depth, boolean hasPreviousScore, int previousScore) {
+		int delta = options.getAspirationWidth();
+		int alpha = Integer.MIN_VALUE;
+		int beta = Integer.MAX_VALUE;
+		if (hasPreviousScore && delta > 0) {
+			alpha = Searcher.windowBound(previousScore, -delta);
+			beta = Searcher.windowBound(previousScore, delta);
+		}
+		while (true) {
+			NodeTask task = new NodeTask(null, new CompactState(root), Move.NONE, 0, depth, alpha, beta, true);
+			int score = pool.invoke(task);
+			if (timeUp) {
+				return task;
+			}
+			if (score <= alpha && alpha != Integer.MIN_VALUE) {
+				statistics.aspirationFailLows++;
+				delta *= options.getAspirationWidening();
+				alpha = Searcher.windowBound(score, -delta);
+			} else if (score >= beta && beta != Integer.MAX_VALUE) {
+				statistics.aspirationFailHighs++;
+				delta *= options.getAspirationWidening();
+				beta = Searcher.windowBound(score, delta);
+			} else {
+				return task;
+			}
+		}
+	}
+
+	/**
+	 * Ages the killers and the history of every pool thread's searcher for a new move of the game. The pool must be
+	 * idle.
+	 */
+	void ageHistory() {
+		synchronized (searchers) {
+			for (Searcher searcher : searchers) {
+				searcher.ageHistory();
+			}
+		}
+	}
+
+	/**
+	 * Returns the counters of the latest search.
+	 * @return the statistics, overwritten by the next search.
+	 */
+	SearchStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Checks whether the search has to stop, and remembers it for the rest of the iteration.
+	 * @return true if the hard deadline has passed or the agent said so.
+	 */
+	private boolean isTimeUp() {
+		if (!timeUp && (stop.get() || timeManager.isTimeUp())) {
+			timeUp = true;
+		}
+		return timeUp;
+	}
+
+	/**
+	 * A node of the search tree. Its score is only meaningful if the task wasn't cancelled.
+	 */
+	@SuppressWarnings("serial")
+	private final class NodeTask extends RecursiveTask<Integer> {
+		private final NodeTask parent;
+		private final CompactState state;
+		private final long lastMove;
+		private final int ply;
+		private final int depth;
+		private final int alpha;
+		private final int beta;
+		private final boolean isMaximizingPlayer;
+		private volatile boolean stale;
+		private long bestMove = Move.NONE;
+
+		NodeTask(NodeTask parent, CompactState state, long lastMove, int ply, int depth, int alpha, int beta,
+				boolean isMaximizingPlayer) {
+			this.parent = parent;
+			this.state = state;
+			this.lastMove = lastMove;
+			this.ply = ply;
+			this.depth = depth;
+			this.alpha = alpha;
+			this.beta = beta;
+			this.isMaximizingPlayer = isMaximizingPlayer;
+		}
+
+		/**
+		 * Checks whether the result of this node is still needed.
+		 * @return true if the node or one of its ancestors was cancelled, or if the search has to stop.
+		 */
+		boolean isStale() {
+			return isCutOff() || isTimeUp();
+		}
+
+		/**
+		 * Checks whether a cutoff made the result of this node unnecessary.
+		 * @return true if the node or one of its ancestors was cancelled.
+		 */
+		private boolean isCutOff() {
+			for (NodeTask task = this; task != null; task = task.parent) {
+				if (task.stale) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		protected Integer compute() {
+			// A brother cancelled before it started returns at once.
+			if (isStale()) {
+				return isMaximizingPlayer ? alpha : beta;
+			}
+
+			// The root always splits, it has to keep track of its best move.
+			if (ply > 0 && (depth < MIN_SPLIT_DEPTH || ply > MAX_SPLIT_PLY || state.winner() != CompactState.NO_WINNER)) {
+				Searcher searcher = threadSearcher.get();
+				int score = searcher.searchSubtree(state, lastMove, ply, depth, alpha, beta, isMaximizingPlayer,
+						this::isStale);
+				// The searcher may have seen the deadline or the stop flag before asking this task.
+				if (searcher.isStopped() && !isCutOff()) {
+					timeUp = true;
+				}
+				return score;
+			}
+			splitNodes.incrementAndGet();
+
+			// Reuse a stored result that was searched at least as deep to a horizon of the same parity, exactly like
+			// the serial search.
+			TranspositionTable.Entry entry = new TranspositionTable.Entry();
+			long hashMove = Move.NONE;
+			if (transpositionTable.probe(state.hash(), entry)) {
+				hashMove = entry.move;
+				int score = Searcher.fromTable(entry.score, ply);
+				if (ply > 0 && entry.depth >= depth
+						&& ((entry.depth - depth) % 2 == 0 || Math.abs(score) >= Searcher.WIN_BOUND)
+						&& (entry.bound == TranspositionTable.EXACT
+						|| (entry.bound == TranspositionTable.LOWER && score >= beta)
+						|| (entry.bound == TranspositionTable.UPPER && score <= alpha))) {
+					return score;
+				}
+			}
+
+			// Split nodes are rare, so the ordered moves are simply collected from a picker, with the late move
+			// reductions the serial search would give them.
+			Searcher searcher = threadSearcher.get();
+			MoveList moves = new MoveList();
+			MoveList reductions = new MoveList();
+			MovePicker picker = new MovePicker(0);
+			picker.init(state, hashMove, searcher.getMoveHistory(), ply, lastMove);
+			for (long move = picker.next(); move != Move.NONE; move = picker.next()) {
+				reductions.add(searcher.reduction(picker, depth, moves.size()));
+				moves.add(move);
+			}
+
+			// The eldest brother is searched first, on this thread and on this task's state, which the moves are
+			// played on and taken back from. Then a young brother per pool thread is kept in flight, each forked with
+			// the window as it is by then, so that a cutoff or a better move found meanwhile reaches the later ones.
+			// Only a forked brother gets a copy of the position, with an undo stack for the split plies below it.
+			int low = alpha;
+			int high = beta;
+			int bestScore = isMaximizingPlayer ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+			int winScore = isMaximizingPlayer ? Searcher.WIN - ply - 1 : -Searcher.WIN + ply + 1;
+			int winner = isMaximizingPlayer ? us : 1 - us;
+			boolean nullWindow = options.getMode() == SearchOptions.Mode.PVS;
+			List<NodeTask> brothers = new ArrayList<>();
+			int next = 0;
+			while (next < moves.size() || !brothers.isEmpty()) {
+				if (next < moves.size() && (next == 0 || brothers.size() < pool.getParallelism())) {
+					long move = moves.get(next);
+					int reduction = (int) reductions.get(next);
+					state.play(move);
+
+					// Return early if we have a winner.
+					if (state.winner() == winner) {
+						state.undo();
+						cancel(brothers);
+						bestMove = move;
+						transpositionTable.store(state.hash(), depth, TranspositionTable.EXACT, Searcher.toTable(winScore, ply),
+								bestMove);
+						return winScore;
+					}
+					if (next++ == 0) {
+						bestScore = new NodeTask(this, state, move, ply + 1, depth - 1, low, high, !isMaximizingPlayer).compute();
+						state.undo();
+						bestMove = move;
+					} else {
+						// With PVS the young brothers only test whether they beat the best move so far, with a null
+						// window, and so do the late ones that are reduced in any mode.
+						boolean test = nullWindow || reduction > 0;
+						int brotherAlpha = test && !isMaximizingPlayer ? high - 1 : low;
+						int brotherBeta = test && isMaximizingPlayer ? low + 1 : high;
+						NodeTask task = new NodeTask(this, new CompactState(state, MAX_SPLIT_PLY), move, ply + 1,
+								depth - 1 - reduction, brotherAlpha, brotherBeta, !isMaximizingPlayer);
+						state.undo();
+						brothers.add(task);
+						task.fork();
+						continue;
+					}
+				} else {
+					// Join the young brothers in move order.
+					NodeTask brother = brothers.remove(0);
+					int score = brother.join();
+					if (!isStale()) {
+						score = searchAgain(brother, score, low, high, nullWindow);
+					}
+					if (isStale()) {
+						cancel(brothers);
+						break;
+					}
+					if (isMaximizingPlayer ? score > bestScore : score < bestScore) {
+						bestScore = score;
+						bestMove = brother.lastMove;
+					}
+				}
+				if (isMaximizingPlayer) {
+					low = Math.max(low, bestScore);
+				} else {
+					high = Math.min(high, bestScore);
+				}
+				if (high <= low || isStale()) {
+					cancel(brothers);
+					break;
+				}
+			}
+
+			// Results of cancelled searches are incomplete and must not be reused.
+			if (!isStale()) {
+				int bound = bestScore <= alpha ? TranspositionTable.UPPER
+						: bestScore >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+				transpositionTable.store(state.hash(), depth, bound, Searcher.toTable(bestScore, ply), bestMove);
+			}
+			return bestScore;
+		}
+
+		/**
+		 * Searches a young brother again on this thread if its result is only a bound that beats the window, like
+		 * the serial search does: a reduced brother first with the full depth, and one that still fails high with a
+		 * null window then with the full window.
+		 * @param brother is the joined young brother.
+		 * @param score is the result of the brother.
+		 * @param low is the current alpha of this node.
+		 * @param high is the current beta of this node.
+		 * @param nullWindow is true if the full depth search tests with a null window first.
+		 * @return the score of the brother, unreliable if this node became stale.
+		 */
+		private int searchAgain(NodeTask brother, int score, int low, int high, boolean nullWindow) {
+			if (brother.depth < depth - 1 && brother.failsHigh(score)) {
+				int testAlpha = nullWindow && !isMaximizingPlayer ? high - 1 : low;
+				int testBeta = nullWindow && isMaximizingPlayer ? low + 1 : high;
+				brother = new NodeTask(this, brother.state, brother.lastMove, ply + 1, depth - 1, testAlpha, testBeta,
+						!isMaximizingPlayer);
+				score = brother.compute();
+				if (isStale()) {
+					return score;
+				}
+			}
+			// The window may have narrowed since the brother was forked, so a fail high is searched again even if
+			// it no longer looks better than the best move.
+			if (brother.failsHigh(score) && (isMaximizingPlayer ? score < high : score > low)) {
+				score = new NodeTask(this, brother.state, brother.lastMove, ply + 1, depth - 1, low, high,
+						!isMaximizingPlayer).compute();
+			}
+			return score;
+		}
+
+		/**
+		 * Checks whether a result of this node is a bound in favour of the parent's side to move.
+		 * @param score is the result.
+		 * @return true if the score is at or beyond the bound the parent's side to move had to beat.
+		 */
+		private boolean failsHigh(int score) {
+			return isMaximizingPlayer ? score <= alpha : score >= beta;
+		}
+
+		/**
+		 * Cancels young brothers whose results are no longer needed and waits for them, so that no task of the
+		 * iteration is still running when it returns.
+		 * @param tasks is the brothers, forked and not joined yet.
+		 */
+		private void cancel(List<NodeTask> tasks) {
+			for (NodeTask task : tasks) {
+				task.stale = true;
+				cancelledTasks.incrementAndGet();
+			}
+			for (NodeTask task : tasks) {
+				task.join();
+			}
+		}
+	}
+}
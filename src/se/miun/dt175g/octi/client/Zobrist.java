@@ -0,0 +1,100 @@
+package se.miun.dt175g.octi.client;
+
+import java.util.SplittableRandom;
+
+import se.miun.dt175g.octi.core.*;
+
+
+/**
+ * Zobrist keys for Octi positions. A position hash is the XOR of one key per pod (color and square), one key per
+ * pod prong mask (square and mask), one key per prongs left counter and a side to move key. The keys are generated
+ * from a fixed seed so that hashes stay the same between runs.
+ */
+final class Zobrist {
+	static final int RED = 0;
+	static final int BLACK = 1;
+	static final int MAX_PRONGS_LEFT = 64;
+
+	private static final long[][] POD = new long[2][Move.SQUARES];
+	private static final long[][] PRONGS = new long[Move.SQUARES][256];
+	private static final long[][] PRONGS_LEFT = new long[2][MAX_PRONGS_LEFT];
+	private static final long BLACK_TO_MOVE;
+
+	static {
+		SplittableRandom random = new SplittableRandom(0x0C7150B1L);
+		for (int color = 0; color < 2; color++) {
+			for (int square = 0; square < Move.SQUARES; square++) {
+				POD[color][square] = random.nextLong();
+			}
+			for (int left = 0; left < MAX_PRONGS_LEFT; left++) {
+				PRONGS_LEFT[color][left] = random.nextLong();
+			}
+		}
+
+		// A pod without prongs only contributes its pod key.
+		for (int square = 0; square < Move.SQUARES; square++) {
+			for (int mask = 1; mask < 256; mask++) {
+				PRONGS[square][mask] = random.nextLong();
+			}
+		}
+		BLACK_TO_MOVE = random.nextLong();
+	}
+
+	private Zobrist() {
+	}
+
+	static long pod(int color, int square) {
+		return POD[color][square];
+	}
+
+	static long prongs(int square, int mask) {
+		return PRONGS[square][mask];
+	}
+
+	static long prongsLeft(int color, int left) {
+		return PRONGS_LEFT[color][left];
+	}
+
+	static long blackToMove() {
+		return BLACK_TO_MOVE;
+	}
+
+	static int color(String color) {
+		return color.equals("black") ? BLACK : RED;
+	}
+
+	/**
+	 * Collects the prongs of a pod into a bit mask indexed by direction ordinal.
+	 * @param pod is the pod.
+	 * @return the prong mask.
+	 */
+	static int prongMask(Pod pod) {
+		int mask = 0;
+		for (Direction direction : Direction.values()) {
+			if (pod.hasProng(direction)) {
+				mask |= 1 << direction.ordinal();
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Computes the hash of a state from scratch.
+	 * @param state is the state to hash.
+	 * @return the Zobrist hash.
+	 */
+	static long hash(OctiState state) {
+		long hash = 0;
+		for (String color : new String[] { "red", "black" }) {
+			for (Pod pod : state.getBoard().getPodsForPlayer(color)) {
+				int square = Move.square(state.getBoard().getPositionFromPod(pod));
+				hash ^= POD[color(color)][square] ^ PRONGS[square][prongMask(pod)];
+			}
+		}
+		hash ^= PRONGS_LEFT[RED][state.getRedProngsLeft()] ^ PRONGS_LEFT[BLACK][state.getBlackProngsLeft()];
+		if (state.getCurrentPlayer().getColor().equals("black")) {
+			hash ^= BLACK_TO_MOVE;
+		}
+		return hash;
+	}
+}
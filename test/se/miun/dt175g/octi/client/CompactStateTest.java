@@ -0,0 +1,127 @@
+package se.miun.dt175g.octi.client;
+
+import java.util.List;
+import java.util.Random;
+
+import se.miun.dt175g.octi.core.*;
+
+
+/**
+ * The CompactStateTest class checks the search engine's {@link CompactState} against the game's own OctiState:
+ * <ul>
+ * <li>Perft, the number of positions a fixed number of plies ahead, is counted on both from the start position and
+ * from positions along random games, where jumps and captures happen.</li>
+ * <li>Along the random games every move of every position is played and taken back on the CompactState, and its
+ * incrementally updated hash is compared with the hash of the OctiState after the same move.</li>
+ * </ul>
+ * Run it with the classes of src and lib/octi-core on the class path. It throws an AssertionError on the first
+ * difference.
+ * <p>
+ * Usage: {@code CompactStateTest [games] [seed]}, the defaults are 20 games and the seed 1.
+ */
+public class CompactStateTest {
+	private static final int START_PERFT_DEPTH = 3;
+	private static final int GAME_PERFT_DEPTH = 2;
+	private static final int MAX_PLIES = 200;
+
+	public static void main(String[] args) {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		Random random = new Random(args.length > 1 ? Long.parseLong(args[1]) : 1);
+
+		OctiState start = OctiState.createBasicMode();
+		checkPerft(start, START_PERFT_DEPTH);
+		long positions = 0;
+		for (int game = 0; game < games; game++) {
+			positions += playGame(random);
+		}
+		System.out.println("CompactState matches OctiState in " + positions + " positions of " + games + " games");
+	}
+
+	/**
+	 * Plays a random game and checks every position on the way.
+	 * @param random is the source of the moves.
+	 * @return the number of positions checked.
+	 */
+	private static int playGame(Random random) {
+		OctiState state = OctiState.createBasicMode();
+		CompactState compact = new CompactState(state);
+		int plies = 0;
+		for (; plies < MAX_PLIES && state.hasWinner() == null; plies++) {
+			checkPerft(state, GAME_PERFT_DEPTH);
+			checkHashes(state, compact);
+			List<OctiAction> actions = state.getLegalActions();
+			OctiAction action = actions.get(random.nextInt(actions.size()));
+			long move = Move.of(action, state);
+			compact.play(move);
+			state = state.performAction(action);
+			check(compact.hash() == Zobrist.hash(state), "hash after " + Move.toString(move), state);
+			// The undo history is limited, continue from a copy.
+			compact = new CompactState(compact);
+		}
+		check(compact.winner() == (state.hasWinner() == null ? CompactState.NO_WINNER : Zobrist.color(state.hasWinner())),
+				"winner", state);
+		return plies;
+	}
+
+	/**
+	 * Plays every move of a position on the CompactState and compares the hash after it, and after taking it back,
+	 * with the hash the OctiState gets.
+	 * @param state is the position.
+	 * @param compact is the same position.
+	 */
+	private static void checkHashes(OctiState state, CompactState compact) {
+		long hash = compact.hash();
+		check(hash == Zobrist.hash(state), "hash", state);
+		for (OctiAction action : state.getLegalActions()) {
+			long move = Move.of(action, state);
+			check(compact.isLegal(move), "legality of " + Move.toString(move), state);
+			compact.play(move);
+			check(compact.hash() == Zobrist.hash(state.performAction(action)), "hash after " + Move.toString(move), state);
+			compact.undo();
+			check(compact.hash() == hash, "hash after undoing " + Move.toString(move), state);
+		}
+	}
+
+	/**
+	 * Counts the positions a number of plies ahead on both representations and compares the counts.
+	 * @param state is the position.
+	 * @param depth is the number of plies.
+	 */
+	private static void checkPerft(OctiState state, int depth) {
+		long expected = perft(state, depth);
+		long actual = perft(new CompactState(state), depth);
+		check(actual == expected, "perft(" + depth + ") is " + actual + ", expected " + expected, state);
+	}
+
+	private static long perft(OctiState state, int depth) {
+		if (depth == 0 || state.hasWinner() != null) {
+			return 1;
+		}
+		long count = 0;
+		for (OctiAction action : state.getLegalActions()) {
+			count += perft(state.performAction(action), depth - 1);
+		}
+		return count;
+	}
+
+	private static long perft(CompactState state, int depth) {
+		if (depth == 0 || state.winner() != CompactState.NO_WINNER) {
+			return 1;
+		}
+		MoveList moves = new MoveList();
+		state.generateAll(moves);
+		long count = 0;
+		for (int i = 0; i < moves.size(); i++) {
+			state.play(moves.get(i));
+			count += perft(state, depth - 1);
+			state.undo();
+		}
+		return count;
+	}
+
+	private static void check(boolean condition, String message, OctiState state) {
+		if (!condition) {
+			throw new AssertionError(message + " in\n" + state);
+		}
+	}
+}
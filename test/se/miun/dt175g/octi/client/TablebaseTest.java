@@ -0,0 +1,150 @@
+package se.miun.dt175g.octi.client;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import se.miun.dt175g.octi.core.*;
+
+
+/**
+ * The TablebaseTest class spot checks a {@link Tablebase} file. It sets up random positions of a pod against a pod
+ * with no prongs left to place, through the JSON the game server sends, and checks each entry against the entries
+ * of the positions after every move:
+ * <ul>
+ * <li>A win in d plies, d odd, needs a move that wins at once if d is 1, and otherwise a move to a loss in d - 1
+ * plies and none to a shorter loss.</li>
+ * <li>A loss in d plies, d even, needs every move to lead to a win in fewer plies, the longest of them in d - 1.</li>
+ * <li>A draw needs a move to a draw and no move to a loss.</li>
+ * </ul>
+ * Run it with the classes of src and lib/octi-core on the class path. It throws an AssertionError on the first
+ * wrong entry.
+ * <p>
+ * Usage: {@code TablebaseTest <file> [positions] [seed]}, the defaults are 10000 positions and the seed 1.
+ */
+public class TablebaseTest {
+	private static final int RED_POD = 0;
+	private static final int BLACK_POD = 4;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: TablebaseTest <file> [positions] [seed]");
+			return;
+		}
+		Tablebase tablebase = Tablebase.open(Path.of(args[0]));
+		int positions = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		Random random = new Random(args.length > 2 ? Long.parseLong(args[2]) : 1);
+
+		OctiState start = OctiState.createBasicMode();
+		check(tablebase.probe(new CompactState(start)) == Tablebase.NOT_FOUND, "the start position is covered", start);
+		int checked = 0;
+		int decided = 0;
+		while (checked < positions) {
+			OctiState state = randomPosition(start, random);
+			CompactState compact = new CompactState(state);
+			int distance = tablebase.probe(compact);
+			if (distance == Tablebase.NOT_FOUND || compact.winner() != CompactState.NO_WINNER) {
+				continue;
+			}
+			MoveList moves = new MoveList();
+			compact.generateAll(moves);
+			if (moves.size() == 0) {
+				continue;
+			}
+			check(distance == expectedDistance(tablebase, compact, moves, state), "distance " + distance, state);
+			checked++;
+			decided += distance == Tablebase.DRAW ? 0 : 1;
+		}
+		System.out.println("Checked " + checked + " positions, " + decided + " of them won or lost");
+	}
+
+	/**
+	 * Works out the entry of a position from the entries after its moves.
+	 * @param tablebase is the tablebase.
+	 * @param compact is the position.
+	 * @param moves is the moves of the position, at least one.
+	 * @param state is the position, for the messages.
+	 * @return the distance the entry should have, or Tablebase.DRAW.
+	 */
+	private static int expectedDistance(Tablebase tablebase, CompactState compact, MoveList moves, OctiState state) {
+		int side = compact.sideToMove();
+		int shortestLoss = Integer.MAX_VALUE; // For the opponent, after one of the moves.
+		int longestWin = 0;
+		boolean draw = false;
+		for (int i = 0; i < moves.size(); i++) {
+			compact.play(moves.get(i));
+			int winner = compact.winner();
+			int distance = winner == CompactState.NO_WINNER ? tablebase.probe(compact) : Tablebase.NOT_FOUND;
+			compact.undo();
+			if (winner == side) {
+				return 1;
+			}
+			check(distance != Tablebase.NOT_FOUND, "no entry after " + Move.toString(moves.get(i)), state);
+			if (distance == Tablebase.DRAW) {
+				draw = true;
+			} else if (distance % 2 == 0) {
+				shortestLoss = Math.min(shortestLoss, distance);
+			} else {
+				longestWin = Math.max(longestWin, distance);
+			}
+		}
+		return shortestLoss != Integer.MAX_VALUE ? shortestLoss + 1 : draw ? Tablebase.DRAW : longestWin + 1;
+	}
+
+	/**
+	 * Sets up a random position of a red pod against a black pod, neither with prongs left to place.
+	 * @param start is the start position, whose bases are used.
+	 * @param random is the source of the position.
+	 * @return the position, which may be over already.
+	 */
+	private static OctiState randomPosition(OctiState start, Random random) {
+		int red = random.nextInt(Move.SQUARES);
+		int black;
+		do {
+			black = random.nextInt(Move.SQUARES);
+		} while (black == red);
+		boolean redToMove = random.nextBoolean();
+		Player current = redToMove ? start.getRedPlayer() : start.getBlackPlayer();
+
+		String json = "{\"board\":{\"height\":7,\"width\":6,\"podPositions\":{"
+				+ "\"map1\":{\"" + RED_POD + "\":" + point(red) + ",\"" + BLACK_POD + "\":" + point(black) + "},"
+				+ "\"map2\":{" + pod(red, RED_POD, "red", random) + "," + pod(black, BLACK_POD, "black", random) + "}}},"
+				+ "\"redBase\":" + points(start.getRedBase()) + ",\"blackBase\":" + points(start.getBlackBase()) + ","
+				+ "\"currentPlayer\":" + player(current) + ",\"redProngsLeft\":0,\"blackProngsLeft\":0,"
+				+ "\"redPlayer\":" + player(start.getRedPlayer()) + ",\"blackPlayer\":" + player(start.getBlackPlayer())
+				+ ",\"terminalState\":false}";
+		return OctiState.createStateFromJson(json);
+	}
+
+	private static String pod(int square, int id, String color, Random random) {
+		StringBuilder sockets = new StringBuilder();
+		for (Direction direction : Direction.values()) {
+			sockets.append(sockets.length() == 0 ? "" : ",").append('"').append(direction.name()).append("\":")
+					.append(random.nextBoolean());
+		}
+		return "\"[" + square % Move.WIDTH + "," + square / Move.WIDTH + "]\":{\"id\":" + id + ",\"color\":\"" + color
+				+ "\",\"sockets\":{" + sockets + "}}";
+	}
+
+	private static String point(int square) {
+		return "{\"x\":" + square % Move.WIDTH + ",\"y\":" + square / Move.WIDTH + "}";
+	}
+
+	private static String points(Point[] points) {
+		StringBuilder json = new StringBuilder();
+		for (Point point : points) {
+			json.append(json.length() == 0 ? "[" : ",").append(point(Move.square(point)));
+		}
+		return json.append(']').toString();
+	}
+
+	private static String player(Player player) {
+		return "{\"playerId\":" + player.getPlayerId() + ",\"color\":\"" + player.getColor() + "\"}";
+	}
+
+	private static void check(boolean condition, String message, OctiState state) {
+		if (!condition) {
+			throw new AssertionError(message + " in\n" + state);
+		}
+	}
+}